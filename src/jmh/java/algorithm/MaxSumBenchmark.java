@@ -0,0 +1,126 @@
+package algorithm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import factorgraph.FactorGraph;
+import factorgraph.FunctionNode;
+import factorgraph.VariableNode;
+import parser.FactorGraphBuilder;
+import problem.InstanceGenerator;
+import toolkit.IntGraph;
+import toolkit.RandomGraphFactory;
+
+/**
+ * Benchmarks of MaxSum: computeZX on a hub variable, and whole executions of
+ * solveSynchronous() and solve() on the bundled and on generated instances.
+ *
+ * @author Luca CPZ
+ */
+@Fork(1)
+public class MaxSumBenchmark {
+
+	/** A variable of the given degree, after one round of messages. */
+	@State(Scope.Thread)
+	public static class ZXState {
+
+		@Param({ "2", "8", "32" })
+		public int degree;
+
+		@Param({ "3", "10" })
+		public int domainSize;
+
+		MaxSum maxSum;
+		VariableNode vn;
+
+		@Setup
+		public void setUp() {
+			int[] sources = new int[degree], dests = new int[degree];
+			for (int i = 0; i < degree; i++)
+				dests[i] = i + 1;
+			FactorGraph graph = new InstanceGenerator(42)
+					.getRandomBinaryDCOP(new IntGraph(degree + 1, sources, dests), domainSize, 100);
+			maxSum = new MaxSum(graph);
+			vn = graph.getVariableNodes()[0];
+			for (FunctionNode fn : vn.getNeighbours())
+				fn.sendRMessageTo(vn);
+		}
+	}
+
+	/**
+	 * A fresh instance for each execution, either a file of xcsp/ or a
+	 * generated one.
+	 */
+	@State(Scope.Thread)
+	public static class SolveState {
+
+		@Param({ "xcsp/GC_7.xml", "xcsp/MS_15_08_3_01.xml", "xcsp/RandomDCOP_25_10_1.xml", "random",
+				"scale-free" })
+		public String instance;
+
+		@Param({ "100" })
+		public int iterations;
+
+		MaxSum maxSum;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			FactorGraph graph;
+			if (instance.equals("random"))
+				graph = new InstanceGenerator(42).getRandomBinaryDCOP(200, 600, 10, 100);
+			else if (instance.equals("scale-free"))
+				graph = new InstanceGenerator(42).getRandomBinaryDCOP(
+						RandomGraphFactory.getScaleFreeIntGraph(200, 3, new Random(42)), 10, 100);
+			else
+				graph = FactorGraphBuilder.build(instance);
+
+			maxSum = new MaxSum(graph);
+			maxSum.setTracing(false);
+			maxSum.setIterationsNumber(iterations);
+			maxSum.setConvergenceNumber(Integer.MAX_VALUE); // no early stopping
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	public Object[] computeZX(ZXState state) {
+		return state.maxSum.computeZX(state.vn);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public long solveSynchronous(SolveState state) {
+		state.maxSum.solveSynchronous();
+		return state.maxSum.iterations;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public long solve(SolveState state) {
+		state.maxSum.solve();
+		return state.maxSum.iterations;
+	}
+
+}
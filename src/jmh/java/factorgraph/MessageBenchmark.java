@@ -0,0 +1,97 @@
+package factorgraph;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import problem.InstanceGenerator;
+import toolkit.IntGraph;
+
+/**
+ * Microbenchmarks of the function-to-variable and variable-to-function
+ * messages, in float (fractionBits = -1) and in fixed point.
+ *
+ * @author Luca CPZ
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark {
+
+	/** A single function of the given arity. */
+	@State(Scope.Thread)
+	public static class RState {
+
+		@Param({ "2", "3", "4" })
+		public int arity;
+
+		@Param({ "3", "10" })
+		public int domainSize;
+
+		@Param({ "-1", "8" })
+		public int fractionBits;
+
+		FunctionNode fn;
+		VariableNode vn;
+
+		@Setup
+		public void setUp() {
+			FactorGraph graph = new InstanceGenerator(42).getRandomDCOP(arity, 1, arity, domainSize, 100);
+			graph.setFixedPoint(fractionBits);
+			fn = graph.getFunctionNodes()[0];
+			vn = fn.getNeighbours()[0];
+		}
+	}
+
+	/** A variable at the centre of a star of binary functions. */
+	@State(Scope.Thread)
+	public static class QState {
+
+		@Param({ "2", "8", "32" })
+		public int degree;
+
+		@Param({ "3", "10" })
+		public int domainSize;
+
+		@Param({ "-1", "8" })
+		public int fractionBits;
+
+		FunctionNode fn;
+		VariableNode vn;
+
+		@Setup
+		public void setUp() {
+			int[] sources = new int[degree], dests = new int[degree];
+			for (int i = 0; i < degree; i++)
+				dests[i] = i + 1;
+			FactorGraph graph = new InstanceGenerator(42)
+					.getRandomBinaryDCOP(new IntGraph(degree + 1, sources, dests), domainSize, 100);
+			graph.setFixedPoint(fractionBits);
+			vn = graph.getVariableNodes()[0];
+			fn = vn.getNeighbours().iterator().next();
+		}
+	}
+
+	@Benchmark
+	public double sendRMessageTo(RState state) {
+		return state.fn.sendRMessageTo(state.vn);
+	}
+
+	@Benchmark
+	public double sendQMessageTo(QState state) {
+		return state.vn.sendQMessageTo(state.fn);
+	}
+
+}
@@ -0,0 +1,64 @@
+package function;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dcop.DecisionVariable;
+import dcop.Function;
+
+/**
+ * Microbenchmarks of the primitive evaluation of the graph colouring
+ * functions, which are not tabulated when their joint space is too large.
+ *
+ * @author Luca CPZ
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionBenchmark {
+
+	@Param({ "2", "4", "8" })
+	public int arity;
+
+	private Function simple, weighted;
+	private int[] args;
+
+	@Setup
+	public void setUp() {
+		int[] colours = new int[] { 1, 2, 3 };
+		DecisionVariable[] variables = new DecisionVariable[arity];
+		args = new int[arity];
+		for (int i = 0; i < arity; i++) {
+			variables[i] = new DecisionVariable(colours, "x" + i);
+			args[i] = colours[i % colours.length];
+		}
+
+		simple = new SimpleGraphColouringFunction(variables, "S");
+		weighted = new WeightedGraphColouringFunction(variables, "W", 0);
+	}
+
+	@Benchmark
+	public float evaluateSimple() {
+		return simple.evaluate(args);
+	}
+
+	@Benchmark
+	public float evaluateWeighted() {
+		return weighted.evaluate(args);
+	}
+
+}
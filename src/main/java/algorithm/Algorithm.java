@@ -1,5 +1,7 @@
 package algorithm;
 
+import java.util.concurrent.Flow;
+
 import factorgraph.FactorGraph;
 import factorgraph.VariableNode;
 import toolkit.Checker;
@@ -8,6 +10,29 @@ public abstract class Algorithm {
 
 	protected FactorGraph graph;
 
+	// per-node instrumentation, null when disabled
+	protected NodeProfiler profiler;
+
+	// period (in iterations) of the best assignment tracking, 0 when disabled
+	protected int anytimePeriod;
+	protected AnytimeTracker anytime;
+	private int trackingPeriod; // anytimePeriod, or 1 if the target utility or a subscriber needs tracking
+
+	// publisher of the improvements of the best assignment, null until requested
+	private SolutionPublisher publisher;
+
+	/* stopping criteria, checked once per iteration */
+	private long timeBudget; // nanoseconds, 0 when there is no budget
+	private long deadline; // System.nanoTime() value
+	private CancellationToken cancellationToken;
+	private float targetUtility = Float.POSITIVE_INFINITY;
+	private volatile boolean targetReached;
+	private volatile boolean stopped;
+
+	/* statistics of the last execution */
+	protected long iterations;
+	protected boolean converged;
+
 	public Algorithm(FactorGraph graph) {
 		if (Checker.assertive)
 			Checker.check(graph != null &&
@@ -23,12 +48,174 @@ public abstract class Algorithm {
 		return graph;
 	}
 
-	public String getSolution() {
-		String s = new String();
+	/**
+	 * Enable or disable the per-node timing instrumentation.
+	 *
+	 * @param enabled whether the next executions should be profiled
+	 */
+	public void setProfiling(boolean enabled) {
+		profiler = enabled ? new NodeProfiler(graph) : null;
+	}
+
+	/**
+	 * @return the profiler of the last execution, or null if profiling is disabled
+	 */
+	public NodeProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Enable the anytime mode: every period iterations, the global utility of the
+	 * current assignment is evaluated and the best assignment is kept.
+	 *
+	 * @param period number of iterations between two evaluations; 0 to disable
+	 */
+	public void setAnytime(int period) {
+		if (period >= 0)
+			anytimePeriod = period;
+	}
+
+	/**
+	 * @return the best assignment found in the last execution, aligned with
+	 *         FactorGraph.getVariableNodes(), or null if the anytime mode is
+	 *         disabled
+	 */
+	public int[] getBestAssignment() {
+		return anytime != null ? anytime.getBestAssignment() : null;
+	}
+
+	/**
+	 * @return the global utility of getBestAssignment()
+	 */
+	public float getBestUtility() {
+		return anytime != null ? anytime.getBestUtility() : Float.NaN;
+	}
+
+	/**
+	 * Returns a publisher of the improvements of the best assignment. The best
+	 * assignment is tracked in the executions that start when the publisher has
+	 * subscribers, once per round unless setAnytime() sets a longer period.
+	 *
+	 * Slow subscribers receive coalesced snapshots, so that executions never wait
+	 * for them. The first snapshot of each execution holds the whole assignment,
+	 * hence subscribers should subscribe before an execution starts. The last
+	 * snapshot of each execution has an empty delta.
+	 *
+	 * @return the snapshots publisher
+	 */
+	public synchronized Flow.Publisher<SolutionSnapshot> getPublisher() {
+		if (publisher == null)
+			publisher = new SolutionPublisher();
+		return publisher;
+	}
+
+	/**
+	 * Bound the duration of each execution.
+	 *
+	 * @param millis maximum duration of an execution in milliseconds; 0 for no
+	 *               bound
+	 */
+	public void setTimeBudget(long millis) {
+		if (millis >= 0)
+			timeBudget = millis * 1000000L;
+	}
+
+	public void setCancellationToken(CancellationToken token) {
+		cancellationToken = token;
+	}
+
+	/**
+	 * Stop an execution as soon as an assignment with at least the given global
+	 * utility is found.
+	 *
+	 * @param utility the target utility
+	 */
+	public void setTargetUtility(float utility) {
+		targetUtility = utility;
+	}
+
+	/**
+	 * @return whether the last execution was stopped by the time budget, the
+	 *         cancellation token or the target utility
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Prepare the instrumentation, best assignment tracking and stopping criteria
+	 * of a new execution.
+	 *
+	 * The best assignment is tracked in the anytime mode, and when the target
+	 * utility or the subscribers of the publisher need it; the time budget and
+	 * the cancellation token are only checked by checkStop().
+	 */
+	protected void startExecution() {
+		if (profiler != null)
+			profiler.reset();
+
+		boolean targeted = targetUtility < Float.POSITIVE_INFINITY;
+		boolean published = publisher != null && publisher.hasSubscribers();
+		trackingPeriod = anytimePeriod > 0 ? anytimePeriod : targeted || published ? 1 : 0;
+		anytime = trackingPeriod > 0 ? new AnytimeTracker(graph) : null;
+		if (anytime != null)
+			anytime.setPublisher(publisher);
+
+		deadline = System.nanoTime() + timeBudget;
+		targetReached = false;
+		stopped = false;
+		iterations = 0;
+		converged = false;
+	}
+
+	/**
+	 * Update the best assignment; engines call this from one thread, once per
+	 * round of messages.
+	 *
+	 * @param iteration the current round
+	 */
+	protected void track(long iteration) {
+		if (anytime != null && iteration % trackingPeriod == 0 && anytime.update(iteration) >= targetUtility)
+			targetReached = true;
+	}
+
+	/**
+	 * Evaluate the final assignment of an execution, which may be the best one.
+	 */
+	protected void stopExecution(long iteration) {
+		if (anytime != null) {
+			anytime.update(iteration);
+			anytime.publishLast(iteration);
+		}
+	}
+
+	/**
+	 * Check the stopping criteria; engines call this once per iteration.
+	 *
+	 * @return true if the current execution must stop
+	 */
+	protected boolean checkStop() {
+		if (targetReached || cancellationToken != null && cancellationToken.isCancelled()
+				|| timeBudget > 0 && System.nanoTime() - deadline >= 0)
+			stopped = true;
+		return stopped;
+	}
+
+	/**
+	 * Returns the solution of the last execution: the best assignment if it was
+	 * tracked, the final one otherwise.
+	 *
+	 * @return the solution
+	 */
+	public Solution getSolution() {
+		if (anytime != null)
+			return new Solution(anytime.getBestAssignment(), anytime.getBestUtility(), iterations, converged, stopped);
+
 		VariableNode[] vars = graph.getVariableNodes();
+		int[] assignment = new int[vars.length];
 		for (int i = 0; i < vars.length; i++)
-			s = s.concat(String.format("\n%s = %d", vars[i], vars[i].getX()));
-		return s;
+			assignment[i] = vars[i].getX();
+		return new Solution(assignment, graph.evaluate(assignment), iterations, converged, stopped);
 	}
 
 	public abstract void solve();
@@ -0,0 +1,194 @@
+package algorithm;
+
+import java.util.Arrays;
+
+import factorgraph.FactorGraph;
+import factorgraph.FunctionNode;
+import factorgraph.VariableNode;
+import toolkit.Checker;
+
+/**
+ * Keeps track of the best assignment found during an execution.
+ *
+ * The global utility is updated incrementally: only the function nodes
+ * adjacent to a variable whose value has changed since the last update are
+ * re-evaluated. Infeasible (i.e. non-finite) utilities are counted apart, so
+ * that removing one from the sum never produces NaN.
+ *
+ * @author Luca CPZ
+ */
+public class AnytimeTracker {
+
+	private FactorGraph graph;
+
+	// assignment and function utilities at the last update, by node index
+	private int[] assignment;
+	private float[] utilities;
+	private boolean initialised;
+
+	// global utility of assignment: sum of finite utilities, number of non-finite ones
+	private double finiteSum;
+	private int infeasible;
+
+	// function nodes to be re-evaluated in the current update
+	private boolean[] dirty;
+	private int[] dirtyList;
+
+	// arguments of the evaluated functions, by arity
+	private int[][] args = new int[1][];
+
+	private int[] bestAssignment;
+	private float bestUtility;
+	private long bestIteration;
+
+	// receives a delta each time the best assignment improves, may be null
+	private SolutionPublisher publisher;
+
+	public AnytimeTracker(FactorGraph graph) {
+		if (Checker.assertive)
+			Checker.check(graph != null, "input factor graph is null");
+
+		this.graph = graph;
+		assignment = new int[graph.getVariableNodes().length];
+		bestAssignment = new int[assignment.length];
+		utilities = new float[graph.getFunctionNodes().length];
+		dirty = new boolean[utilities.length];
+		dirtyList = new int[utilities.length];
+		bestUtility = Float.NEGATIVE_INFINITY;
+		bestIteration = -1;
+	}
+
+	/**
+	 * Evaluate the current assignment of the variable nodes and store it if it is
+	 * the best one so far.
+	 *
+	 * @param iteration the iteration of the algorithm that produced the assignment
+	 * @return the global utility of the current assignment
+	 */
+	public synchronized float update(long iteration) {
+		VariableNode[] vns = graph.getVariableNodes();
+		FunctionNode[] fns = graph.getFunctionNodes();
+		int i, dirtyNumber = 0;
+
+		if (!initialised) {
+			for (i = 0; i < vns.length; i++)
+				assignment[i] = vns[i].getX();
+			for (i = 0; i < fns.length; i++)
+				dirtyList[dirtyNumber++] = i;
+			initialised = true;
+		} else
+			for (i = 0; i < vns.length; i++) {
+				int x = vns[i].getX();
+				if (x == assignment[i])
+					continue;
+				assignment[i] = x;
+				for (FunctionNode fn : vns[i].getNeighbours())
+					if (!dirty[fn.getIndex()]) {
+						dirty[fn.getIndex()] = true;
+						dirtyList[dirtyNumber++] = fn.getIndex();
+					}
+			}
+
+		// replace the old utility of each dirty function node with the new one
+		for (i = 0; i < dirtyNumber; i++) {
+			int f = dirtyList[i];
+			dirty[f] = false;
+			remove(utilities[f]);
+			utilities[f] = evaluate(fns[f]);
+			add(utilities[f]);
+		}
+
+		float utility = getUtility();
+		if (bestIteration < 0 || utility > bestUtility) {
+			if (publisher != null && publisher.hasSubscribers())
+				publisher.submit(getDelta(iteration, utility));
+			System.arraycopy(assignment, 0, bestAssignment, 0, assignment.length);
+			bestUtility = utility;
+			bestIteration = iteration;
+		}
+
+		return utility;
+	}
+
+	// the difference between assignment and bestAssignment
+	private SolutionSnapshot getDelta(long iteration, float utility) {
+		int[] variables = new int[assignment.length];
+		int[] values = new int[assignment.length];
+		int n = 0;
+
+		for (int i = 0; i < assignment.length; i++)
+			if (bestIteration < 0 || assignment[i] != bestAssignment[i]) {
+				variables[n] = i;
+				values[n++] = assignment[i];
+			}
+
+		return new SolutionSnapshot(iteration, Arrays.copyOf(variables, n), Arrays.copyOf(values, n), utility, false);
+	}
+
+	public synchronized void setPublisher(SolutionPublisher publisher) {
+		this.publisher = publisher;
+	}
+
+	/**
+	 * Publish an empty delta marking the end of the execution.
+	 *
+	 * @param iteration the last iteration of the execution
+	 */
+	public synchronized void publishLast(long iteration) {
+		if (publisher != null && publisher.hasSubscribers())
+			publisher.submit(new SolutionSnapshot(iteration, new int[0], new int[0], bestUtility, true));
+	}
+
+	private float evaluate(FunctionNode fn) {
+		VariableNode[] neighbours = fn.getNeighbours();
+		if (neighbours.length >= args.length)
+			args = Arrays.copyOf(args, neighbours.length + 1);
+		if (args[neighbours.length] == null)
+			args[neighbours.length] = new int[neighbours.length];
+
+		int[] a = args[neighbours.length];
+		for (int i = 0; i < a.length; i++)
+			a[i] = assignment[neighbours[i].getIndex()];
+		return fn.evaluate(a);
+	}
+
+	private void add(float u) {
+		if (Float.isFinite(u))
+			finiteSum += u;
+		else
+			infeasible++;
+	}
+
+	private void remove(float u) {
+		if (Float.isFinite(u))
+			finiteSum -= u;
+		else
+			infeasible--;
+	}
+
+	/**
+	 * @return the global utility of the assignment evaluated in the last update
+	 */
+	public synchronized float getUtility() {
+		return infeasible > 0 ? Float.NEGATIVE_INFINITY : (float) finiteSum;
+	}
+
+	/**
+	 * @return the best assignment so far, aligned with FactorGraph.getVariableNodes()
+	 */
+	public synchronized int[] getBestAssignment() {
+		return bestAssignment.clone();
+	}
+
+	public synchronized float getBestUtility() {
+		return bestUtility;
+	}
+
+	/**
+	 * @return the iteration in which the best assignment was found, -1 if none
+	 */
+	public synchronized long getBestIteration() {
+		return bestIteration;
+	}
+
+}
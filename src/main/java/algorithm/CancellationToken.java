@@ -0,0 +1,21 @@
+package algorithm;
+
+/**
+ * A flag shared between an Algorithm and its caller, used to stop an execution
+ * from another thread.
+ *
+ * @author Luca CPZ
+ */
+public class CancellationToken {
+
+	private volatile boolean cancelled;
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+}
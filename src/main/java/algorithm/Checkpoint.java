@@ -0,0 +1,75 @@
+package algorithm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import factorgraph.FactorGraph;
+import factorgraph.MessageState;
+import toolkit.BinaryWriter;
+
+/**
+ * Saves and restores the state of a MaxSum execution: its messages, the x and
+ * z of each variable node, the number of iterations and the convergence state.
+ *
+ * A restored execution is resumed by the next solveSynchronous(), which
+ * performs the iterations that were left; solve() only reuses the messages,
+ * as its nodes iterate independently.
+ *
+ * @author Luca CPZ
+ */
+public class Checkpoint {
+
+	private static final int MAGIC = 0x4a4d5343; // "JMSC"
+	private static final int VERSION = 1;
+
+	/**
+	 * Saves a checkpoint, replacing file atomically, so that a failed save keeps
+	 * the previous checkpoint.
+	 *
+	 * @param maxSum a MaxSum instance, which must not be running
+	 * @param file   the output file
+	 * @throws IOException if file cannot be written
+	 */
+	public static void save(MaxSum maxSum, Path file) throws IOException {
+		BinaryWriter.write(file, out -> {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putLong(maxSum.iterations);
+			out.putInt(maxSum.converged ? 1 : 0);
+			MessageState.write(maxSum.graph, maxSum.getConvergenceCounters(), out);
+		});
+	}
+
+	/**
+	 * Restores a checkpoint into a MaxSum instance, whose factor graph must be of
+	 * the same problem; nodes that are not in the checkpoint keep their state.
+	 *
+	 * @param maxSum a MaxSum instance, which must not be running
+	 * @param file   a checkpoint
+	 * @return the number of restored nodes
+	 * @throws IOException if file cannot be read, is not a checkpoint or is
+	 *                     corrupt, in which case maxSum is left unchanged
+	 */
+	public static int restore(MaxSum maxSum, Path file) throws IOException {
+		ByteBuffer in;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		if (in.remaining() < 20 || in.getInt() != MAGIC || in.getInt() != VERSION)
+			throw new IOException(file + " is not a checkpoint");
+		long iterations = in.getLong();
+		boolean converged = in.getInt() != 0;
+
+		FactorGraph graph = maxSum.graph;
+		int[] counters = maxSum.getConvergenceCounters();
+		int restored = MessageState.read(graph, in, counters);
+		maxSum.resume(iterations, converged, counters);
+		return restored;
+	}
+
+}
@@ -8,7 +8,9 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 import dcop.DecisionVariable;
 import factorgraph.FactorGraph;
@@ -28,8 +30,30 @@ public class MaxSum extends Algorithm {
 	private int convergenceNumber;
 
 	private volatile int terminatedNodes;
+
+	// iterations performed by all the variable nodes in solve(), to track the best assignment once per round
+	private final AtomicLong nodeIterations = new AtomicLong();
+
+	// thread pool size of solve(); 0 for the default
+	private int threadsNumber;
+
+	// messages sent by the last execution
+	private long messagesNumber;
+
+	// creates the threads of solve(), replaced by tests that instrument them
+	ThreadFactory threadFactory = Executors.defaultThreadFactory();
 	private String lastResults;
 
+	// whether the results of each iteration are recorded for getResults()
+	private boolean tracing = true;
+
+	// iterations in which the x of each variable node has not changed, in solveSynchronous()
+	private Map<VariableNode, Integer> convergenceMap = new HashMap<VariableNode, Integer>();
+
+	// state restored by a Checkpoint, resumed by the next solveSynchronous(); -1 if none
+	private long resumedIterations = -1;
+	private boolean resumedConverged;
+
 	// results of a MaxSum iteration
 	protected class Iteration {
 
@@ -78,10 +102,74 @@ public class MaxSum extends Algorithm {
 			iterationsNumber = i;
 	}
 
+	/**
+	 * @param i the number of threads used by solve(); if not positive, as
+	 *          recommended in 'Java Concurrency in Practice' book
+	 */
+	public void setThreadsNumber(int i) {
+		threadsNumber = Math.max(i, 0);
+	}
+
+	/**
+	 * @return the number of messages sent by the last execution
+	 */
+	public synchronized long getMessagesNumber() {
+		return messagesNumber;
+	}
+
+	/**
+	 * Enable or disable the recording of the messages of each iteration, which
+	 * are only needed by getResults().
+	 *
+	 * @param enabled whether the next executions should be traced
+	 */
+	public void setTracing(boolean enabled) {
+		tracing = enabled;
+	}
+
+	/**
+	 * @return the number of iterations in which the x of each variable node has
+	 *         not changed, aligned with graph.getVariableNodes(); -1 if unknown
+	 */
+	int[] getConvergenceCounters() {
+		VariableNode[] vns = graph.getVariableNodes();
+		int[] counters = new int[vns.length];
+		for (int i = 0; i < vns.length; i++)
+			counters[i] = convergenceMap.getOrDefault(vns[i], -1);
+		return counters;
+	}
+
+	/**
+	 * Make the next solveSynchronous() continue an execution.
+	 *
+	 * @param iterations the number of iterations already performed
+	 * @param converged  whether the execution converged
+	 * @param counters   as returned by getConvergenceCounters()
+	 */
+	void resume(long iterations, boolean converged, int[] counters) {
+		VariableNode[] vns = graph.getVariableNodes();
+		convergenceMap = new HashMap<VariableNode, Integer>();
+		for (int i = 0; i < vns.length; i++)
+			if (counters[i] >= 0)
+				convergenceMap.put(vns[i], counters[i]);
+		resumedIterations = iterations;
+		resumedConverged = converged;
+	}
+
 	public synchronized boolean addIteration(Iteration i) {
 		return results.add(i);
 	}
 
+	// merge the statistics of a variable node into those of the execution
+	private synchronized void addStatistics(long nodeIterations, boolean nodeConverged) {
+		iterations = Math.max(iterations, nodeIterations);
+		converged &= nodeConverged;
+	}
+
+	private synchronized void addMessages(long nodeMessages) {
+		messagesNumber += nodeMessages;
+	}
+
 	public synchronized int terminated() {
 		return ++terminatedNodes;
 	}
@@ -89,11 +177,16 @@ public class MaxSum extends Algorithm {
 	@Override
 	public void solve() {
 		terminatedNodes = 0;
+		messagesNumber = 0;
+		nodeIterations.set(0);
+		startExecution();
+		converged = true; // until a variable node does not converge
 		results = new ArrayList<Iteration>();
 
 		List<Callable<Void>> taskList = new ArrayList<Callable<Void>>();
-		// thread pool size as recommended in 'Java Concurrency in Practice' book
-		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
+		// thread pool size as recommended in 'Java Concurrency in Practice' book, unless set
+		ExecutorService executor = Executors.newFixedThreadPool(
+				threadsNumber > 0 ? threadsNumber : Runtime.getRuntime().availableProcessors() + 1, threadFactory);
 
 		for (FunctionNode fn : graph.getFunctionNodes())
 			taskList.add(new Callable<Void>() {
@@ -122,6 +215,8 @@ public class MaxSum extends Algorithm {
 			e.printStackTrace();
 			executor.shutdownNow();
 		}
+
+		stopExecution(iterations);
 	}
 
 	private void solveFunctionNode(FunctionNode fn) {
@@ -135,17 +230,22 @@ public class MaxSum extends Algorithm {
 		VariableNode[] neighbours = fn.getNeighbours();
 		int[] lastX = new int[neighbours.length];
 		int i;
+		double r;
 		Iteration iteration;
+		long messages = 0;
 
-		while (myIterationsNumber-- > 0 && !converged) {
-			iteration = new Iteration();
+		while (myIterationsNumber-- > 0 && !converged && !checkStop()) {
+			iteration = tracing ? new Iteration() : null;
+			messages += neighbours.length;
 
 			for (i = 0; i < neighbours.length; i++) {
 				/* get previous solution values */
 				lastX[i] = neighbours[i].getX();
 
 				/* propagate messages */
-				iteration.setR(fn, neighbours[i], fn.sendRMessageTo(neighbours[i]));
+				r = sendRMessage(fn, neighbours[i]);
+				if (iteration != null)
+					iteration.setR(fn, neighbours[i], r);
 
 				/* store convergence condition */
 				if (neighbours[i].getX().equals(lastX[i])) { // solution has not changed
@@ -165,29 +265,54 @@ public class MaxSum extends Algorithm {
 				converged = isConverged(convergenceMap);
 
 			/* store results of this iteration */
-			iteration.converged = converged;
-			iteration.customStr = " - " + fn.toString();
-			addIteration(iteration); // synchronised
+			if (iteration != null) {
+				iteration.converged = converged;
+				iteration.customStr = " - " + fn.toString();
+				addIteration(iteration); // synchronised
+			}
 		}
 
+		addMessages(messages); // synchronised
+	}
+
+	/*
+	 * Track the best assignment once per round of solve(), i.e. each time the
+	 * variable nodes have performed as many iterations as there are variable
+	 * nodes, so that only one thread evaluates the assignment and the others do
+	 * not wait for it.
+	 */
+	private void trackRound() {
+		if (anytime == null)
+			return;
+
+		long n = nodeIterations.incrementAndGet();
+		int nbrNodes = graph.getVariableNodes().length;
+		if (n % nbrNodes == 0)
+			track(n / nbrNodes); // synchronised
 	}
 
 	private void solveVariableNode(VariableNode vn) {
 		long myIterationsNumber = iterationsNumber;
+		long myIteration = 0;
 		Object[] zx;
 
 		/* variables used to check convergence */
 		Map<VariableNode, Integer> convergenceMap = new HashMap<VariableNode, Integer>();
 		boolean converged = false; // early stopping condition
 		Integer xRepetitions;
+		double q;
 		Iteration iteration;
+		long messages = 0;
 
-		while (myIterationsNumber-- > 0 && !converged) {
-			iteration = new Iteration();
+		while (myIterationsNumber-- > 0 && !converged && !checkStop()) {
+			iteration = tracing ? new Iteration() : null;
+			messages += vn.getNeighbours().size();
 
 			for (FunctionNode fn : vn.getNeighbours()) {
 				/* variable-to-function messages */
-				iteration.setQ(vn, fn, vn.sendQMessageTo(fn));
+				q = sendQMessage(vn, fn);
+				if (iteration != null)
+					iteration.setQ(vn, fn, q);
 
 				/* compute new z and x */
 				zx = computeZX(vn); // zx[0] for z, zx[1] for x
@@ -207,7 +332,8 @@ public class MaxSum extends Algorithm {
 					vn.setX((Integer) zx[1]);
 
 					/* create results of this iteration */
-					iteration.setZX(vn.getDecisionVariable(), (Float) zx[0], (Integer) zx[1]);
+					if (iteration != null)
+						iteration.setZX(vn.getDecisionVariable(), (Float) zx[0], (Integer) zx[1]);
 				}
 
 			}
@@ -217,40 +343,69 @@ public class MaxSum extends Algorithm {
 				converged = isConverged(convergenceMap);
 
 			/* store results of this iteration */
-			iteration.converged = converged;
-			iteration.customStr = " - " + vn.toString();
-			addIteration(iteration); // synchronised
+			if (iteration != null) {
+				iteration.converged = converged;
+				iteration.customStr = " - " + vn.toString();
+				addIteration(iteration); // synchronised
+			}
+
+			myIteration++;
+			trackRound();
 		}
+
+		addStatistics(myIteration, converged); // synchronised
+		addMessages(messages); // synchronised
 	}
 
 	/**
 	 * Execute Max-Sum synchronously.
 	 *
 	 * More precisely, the agents are processed sequentially in insertion order.
+	 * An execution restored by a Checkpoint is continued.
 	 */
 	public void solveSynchronous() {
+		startExecution();
+		long currentIteration = 0;
+
 		/* variables used to check convergence */
-		Map<VariableNode, Integer> convergenceMap = new HashMap<VariableNode, Integer>();
 		boolean converged = false; // early stopping condition
 		Integer xRepetitions;
 
+		if (resumedIterations >= 0) {
+			currentIteration = resumedIterations;
+			converged = resumedConverged;
+			resumedIterations = -1;
+		} else
+			convergenceMap = new HashMap<VariableNode, Integer>();
+		long myIterationsNumber = iterationsNumber - currentIteration;
+
 		/* variables used to store results */
 		results = new ArrayList<Iteration>();
 		Iteration iteration;
 		Object[] zx;
+		double message;
+		long messages = 0;
 
-		while (iterationsNumber-- > 0 && !converged) {
-			iteration = new Iteration();
+		while (myIterationsNumber-- > 0 && !converged && !checkStop()) {
+			iteration = tracing ? new Iteration() : null;
 
 			/* function-to-variable messages */
 			for (FunctionNode fn : graph.getFunctionNodes())
-				for (VariableNode vn : fn.getNeighbours())
-					iteration.setR(fn, vn, fn.sendRMessageTo(vn));
+				for (VariableNode vn : fn.getNeighbours()) {
+					message = sendRMessage(fn, vn);
+					messages++;
+					if (iteration != null)
+						iteration.setR(fn, vn, message);
+				}
 
 			for (VariableNode vn : graph.getVariableNodes()) {
 				/* variable-to-function messages */
-				for (FunctionNode fn : vn.getNeighbours())
-					iteration.setQ(vn, fn, vn.sendQMessageTo(fn));
+				for (FunctionNode fn : vn.getNeighbours()) {
+					message = sendQMessage(vn, fn);
+					messages++;
+					if (iteration != null)
+						iteration.setQ(vn, fn, message);
+				}
 
 				/* compute new z and x */
 				zx = computeZX(vn); // zx[0] for z, zx[1] for x
@@ -271,17 +426,53 @@ public class MaxSum extends Algorithm {
 				}
 
 				/* create results of this iteration */
-				iteration.setZX(vn.getDecisionVariable(), (Float) zx[0], (Integer) zx[1]);
+				if (iteration != null)
+					iteration.setZX(vn.getDecisionVariable(), (Float) zx[0], (Integer) zx[1]);
 			}
 
 			/* check convergence each convergenceNumber iterations */
-			if (iterationsNumber % convergenceNumber == 0)
+			if (myIterationsNumber % convergenceNumber == 0)
 				converged = isConverged(convergenceMap);
 
 			/* store results of this iteration */
-			iteration.converged = converged;
-			results.add(iteration);
+			if (iteration != null) {
+				iteration.converged = converged;
+				results.add(iteration);
+			}
+
+			track(++currentIteration);
 		}
+
+		iterations = currentIteration;
+		this.converged = converged;
+		messagesNumber = messages;
+		stopExecution(currentIteration);
+	}
+
+	/**
+	 * Send a function-to-variable message, sampling its cost when profiling.
+	 */
+	private double sendRMessage(FunctionNode fn, VariableNode vn) {
+		if (profiler == null)
+			return fn.sendRMessageTo(vn);
+
+		long t = System.nanoTime();
+		double r = fn.sendRMessageTo(vn);
+		profiler.addSample(fn, System.nanoTime() - t);
+		return r;
+	}
+
+	/**
+	 * Send a variable-to-function message, sampling its cost when profiling.
+	 */
+	private double sendQMessage(VariableNode vn, FunctionNode fn) {
+		if (profiler == null)
+			return vn.sendQMessageTo(fn);
+
+		long t = System.nanoTime();
+		double q = vn.sendQMessageTo(fn);
+		profiler.addSample(vn, System.nanoTime() - t);
+		return q;
 	}
 
 	/**
@@ -290,7 +481,10 @@ public class MaxSum extends Algorithm {
 	 * @param vn a variable node
 	 * @return new marginal distribution (z) and solution (x) of vn
 	 */
-	private Object[] computeZX(VariableNode vn) {
+	Object[] computeZX(VariableNode vn) {
+		if (graph.getFixedPoint() >= 0)
+			return vn.computeFixedPointZX();
+
 		Float newZ = Float.NEGATIVE_INFINITY, sum;
 		Integer newX = null;
 
@@ -0,0 +1,123 @@
+package algorithm;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import factorgraph.FactorGraph;
+import factorgraph.FunctionNode;
+import factorgraph.VariableNode;
+import toolkit.Checker;
+
+/**
+ * Per-node cumulative time and call-count instrumentation of a factor graph.
+ *
+ * Samples are stored in arrays indexed by FunctionNode.getIndex() and
+ * VariableNode.getIndex(). Every engine updates a node's slots only from the
+ * thread that is processing that node, hence no synchronisation is needed.
+ *
+ * @author Luca CPZ
+ */
+public class NodeProfiler {
+
+	private FactorGraph graph;
+
+	// cumulative nanoseconds and number of calls, for each node
+	private long[] functionTimes, functionCalls;
+	private long[] variableTimes, variableCalls;
+
+	public NodeProfiler(FactorGraph graph) {
+		if (Checker.assertive)
+			Checker.check(graph != null, "input factor graph is null");
+
+		this.graph = graph;
+		reset();
+	}
+
+	/**
+	 * Discard all samples, resizing the arrays to the current factor graph.
+	 */
+	public void reset() {
+		functionTimes = new long[graph.getFunctionNodes().length];
+		functionCalls = new long[functionTimes.length];
+		variableTimes = new long[graph.getVariableNodes().length];
+		variableCalls = new long[variableTimes.length];
+	}
+
+	public void addSample(FunctionNode fn, long nanos) {
+		functionTimes[fn.getIndex()] += nanos;
+		functionCalls[fn.getIndex()]++;
+	}
+
+	public void addSample(VariableNode vn, long nanos) {
+		variableTimes[vn.getIndex()] += nanos;
+		variableCalls[vn.getIndex()]++;
+	}
+
+	public long[] getFunctionTimes() {
+		return functionTimes;
+	}
+
+	public long[] getFunctionCalls() {
+		return functionCalls;
+	}
+
+	public long[] getVariableTimes() {
+		return variableTimes;
+	}
+
+	public long[] getVariableCalls() {
+		return variableCalls;
+	}
+
+	/**
+	 * Returns the indices of the n nodes with the highest cumulative time.
+	 *
+	 * @param times cumulative times, indexed by node
+	 * @param n     maximum number of indices to return
+	 * @return node indices, sorted by decreasing cumulative time
+	 */
+	static Integer[] top(long[] times, int n) {
+		Integer[] idx = new Integer[times.length];
+		for (int i = 0; i < idx.length; i++)
+			idx[i] = i;
+		Arrays.sort(idx, Comparator.comparingLong((Integer i) -> times[i]).reversed());
+		return Arrays.copyOf(idx, Math.min(n, idx.length));
+	}
+
+	/**
+	 * Lists the n most expensive function and variable nodes.
+	 *
+	 * @param n number of nodes of each kind to list
+	 * @return the report
+	 */
+	public String getReport(int n) {
+		StringBuilder sb = new StringBuilder();
+		FunctionNode[] fns = graph.getFunctionNodes();
+		VariableNode[] vns = graph.getVariableNodes();
+
+		sb.append(String.format("Top %d function nodes\n%-16s %5s %-16s %10s %12s %10s\n", n, "node", "arity",
+				"domains", "calls", "total (ms)", "mean (us)"));
+		for (int i : top(functionTimes, n)) {
+			VariableNode[] neighbours = fns[i].getNeighbours();
+			StringBuilder domains = new StringBuilder();
+			for (int j = 0; j < neighbours.length; j++)
+				domains.append(j > 0 ? "x" : "").append(neighbours[j].getDecisionVariable().getDomain().length);
+			sb.append(String.format("%-16s %5d %-16s %10d %12.3f %10.3f\n", fns[i], neighbours.length, domains,
+					functionCalls[i], functionTimes[i] / 1e6, mean(functionTimes[i], functionCalls[i])));
+		}
+
+		sb.append(String.format("\nTop %d variable nodes\n%-16s %6s %6s %10s %12s %10s\n", n, "node", "domain",
+				"degree", "calls", "total (ms)", "mean (us)"));
+		for (int i : top(variableTimes, n))
+			sb.append(String.format("%-16s %6d %6d %10d %12.3f %10.3f\n", vns[i],
+					vns[i].getDecisionVariable().getDomain().length, vns[i].getNeighbours().size(), variableCalls[i],
+					variableTimes[i] / 1e6, mean(variableTimes[i], variableCalls[i])));
+
+		return sb.toString();
+	}
+
+	private static double mean(long nanos, long calls) {
+		return calls > 0 ? nanos / 1e3 / calls : 0;
+	}
+
+}
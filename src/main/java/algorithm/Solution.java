@@ -0,0 +1,75 @@
+package algorithm;
+
+import factorgraph.FactorGraph;
+import factorgraph.VariableNode;
+
+/**
+ * The result of an execution of an Algorithm.
+ *
+ * @author Luca CPZ
+ */
+public class Solution {
+
+	private final int[] assignment;
+	private final float utility;
+	private final long iterations;
+	private final boolean converged;
+	private final boolean stopped;
+
+	/**
+	 * @param assignment value of each variable, aligned with
+	 *                   FactorGraph.getVariableNodes()
+	 * @param utility    global utility of assignment
+	 * @param iterations number of iterations performed
+	 * @param converged  whether the execution converged
+	 * @param stopped    whether the execution was stopped by a stopping criterion
+	 */
+	public Solution(int[] assignment, float utility, long iterations, boolean converged, boolean stopped) {
+		this.assignment = assignment;
+		this.utility = utility;
+		this.iterations = iterations;
+		this.converged = converged;
+		this.stopped = stopped;
+	}
+
+	public int[] getAssignment() {
+		return assignment;
+	}
+
+	public float getUtility() {
+		return utility;
+	}
+
+	public long getIterations() {
+		return iterations;
+	}
+
+	public boolean isConverged() {
+		return converged;
+	}
+
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Renders this solution as text, naming variables after the given graph.
+	 *
+	 * @param graph the factor graph this solution was computed on
+	 * @return one "variable = value" line per variable
+	 */
+	public String format(FactorGraph graph) {
+		StringBuilder sb = new StringBuilder();
+		VariableNode[] vars = graph.getVariableNodes();
+		for (int i = 0; i < vars.length; i++)
+			sb.append(String.format("\n%s = %d", vars[i], assignment[i]));
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("utility %.3f after %d iterations%s%s", utility, iterations,
+				converged ? ", converged" : "", stopped ? ", stopped" : "");
+	}
+
+}
@@ -0,0 +1,191 @@
+package algorithm;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes the SolutionSnapshots of an Algorithm.
+ *
+ * Each subscription holds at most one pending snapshot per execution: when a
+ * subscriber is slower than the algorithm, consecutive snapshots of the same
+ * execution are coalesced into one, while the last snapshot of an execution is
+ * never merged with the snapshots of the next one. Hence submit() never blocks,
+ * and subscribers are always signalled from the executor, never from the
+ * algorithm threads. A subscriber that throws is cancelled and receives
+ * onError.
+ *
+ * @author Luca CPZ
+ */
+public class SolutionPublisher implements Flow.Publisher<SolutionSnapshot> {
+
+	private final Executor executor;
+	private final List<SnapshotSubscription> subscriptions = new CopyOnWriteArrayList<SnapshotSubscription>();
+	private volatile boolean closed;
+
+	public SolutionPublisher() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param executor the executor used to deliver snapshots to subscribers
+	 */
+	public SolutionPublisher(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super SolutionSnapshot> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException("subscriber is null");
+
+		SnapshotSubscription s = new SnapshotSubscription(subscriber);
+		subscriptions.add(s);
+		subscriber.onSubscribe(s);
+		if (closed)
+			s.complete();
+	}
+
+	/**
+	 * @return whether there is at least one subscriber
+	 */
+	public boolean hasSubscribers() {
+		return !subscriptions.isEmpty();
+	}
+
+	/**
+	 * Offer a snapshot to every subscriber, without blocking.
+	 *
+	 * @param snapshot the snapshot
+	 */
+	public void submit(SolutionSnapshot snapshot) {
+		if (closed)
+			throw new IllegalStateException("publisher is closed");
+		for (SnapshotSubscription s : subscriptions)
+			s.offer(snapshot);
+	}
+
+	/**
+	 * Complete every subscription, once its pending snapshot has been delivered.
+	 */
+	public void close() {
+		closed = true;
+		for (SnapshotSubscription s : subscriptions)
+			s.complete();
+	}
+
+	private class SnapshotSubscription implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super SolutionSnapshot> subscriber;
+
+		// snapshots not yet delivered, in order; only the last one may be coalesced, unless it ends an execution
+		private final AtomicReference<SolutionSnapshot[]> pending = new AtomicReference<SolutionSnapshot[]>();
+		private final AtomicLong demand = new AtomicLong();
+
+		// number of signals not yet processed by run(), which is executing if > 0
+		private final AtomicInteger signals = new AtomicInteger();
+
+		private volatile boolean completed, cancelled;
+		private volatile Throwable error;
+
+		SnapshotSubscription(Flow.Subscriber<? super SolutionSnapshot> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		void offer(SolutionSnapshot snapshot) {
+			SolutionSnapshot[] prev, next;
+			do {
+				prev = pending.get();
+				if (prev == null)
+					next = new SolutionSnapshot[] { snapshot };
+				else if (prev[prev.length - 1].isLast()) {
+					next = Arrays.copyOf(prev, prev.length + 1);
+					next[prev.length] = snapshot;
+				} else {
+					next = prev.clone();
+					next[prev.length - 1] = prev[prev.length - 1].merge(snapshot);
+				}
+			} while (!pending.compareAndSet(prev, next));
+			signal();
+		}
+
+		// removes the first pending snapshot, null if none
+		private SolutionSnapshot poll() {
+			SolutionSnapshot[] prev;
+			do
+				prev = pending.get();
+			while (prev != null
+					&& !pending.compareAndSet(prev, prev.length == 1 ? null : Arrays.copyOfRange(prev, 1, prev.length)));
+			return prev != null ? prev[0] : null;
+		}
+
+		void complete() {
+			completed = true;
+			signal();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0)
+				error = new IllegalArgumentException("non-positive request: " + n);
+			else
+				demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+			signal();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+		}
+
+		private void signal() {
+			if (signals.getAndIncrement() == 0)
+				executor.execute(this);
+		}
+
+		// deliver the pending snapshots, serially with respect to other deliveries
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (cancelled)
+					return;
+
+				if (error != null) {
+					cancel();
+					subscriber.onError(error);
+					return;
+				}
+
+				while (demand.get() > 0 && !cancelled) {
+					SolutionSnapshot snapshot = poll();
+					if (snapshot == null)
+						break;
+					demand.decrementAndGet();
+					try {
+						subscriber.onNext(snapshot);
+					} catch (Throwable t) {
+						cancel();
+						subscriber.onError(t);
+						return;
+					}
+				}
+
+				if (completed && pending.get() == null && !cancelled) {
+					cancel();
+					subscriber.onComplete();
+					return;
+				}
+			} while ((missed = signals.addAndGet(-missed)) != 0);
+		}
+
+	}
+
+}
@@ -0,0 +1,90 @@
+package algorithm;
+
+import java.util.Arrays;
+
+/**
+ * An improvement of the best assignment of an execution, expressed as a delta
+ * with respect to the previous snapshot.
+ *
+ * Variables are identified by their index in FactorGraph.getVariableNodes().
+ *
+ * @author Luca CPZ
+ */
+public class SolutionSnapshot {
+
+	private final long iteration;
+	private final int[] variables; // sorted
+	private final int[] values;
+	private final float utility;
+	private final boolean last;
+
+	/**
+	 * @param iteration the iteration in which the assignment was found
+	 * @param variables sorted indices of the variables whose value has changed
+	 * @param values    new values of variables
+	 * @param utility   global utility of the assignment
+	 * @param last      whether this is the last snapshot of an execution
+	 */
+	public SolutionSnapshot(long iteration, int[] variables, int[] values, float utility, boolean last) {
+		this.iteration = iteration;
+		this.variables = variables;
+		this.values = values;
+		this.utility = utility;
+		this.last = last;
+	}
+
+	public long getIteration() {
+		return iteration;
+	}
+
+	public int[] getVariables() {
+		return variables;
+	}
+
+	public int[] getValues() {
+		return values;
+	}
+
+	public float getUtility() {
+		return utility;
+	}
+
+	public boolean isLast() {
+		return last;
+	}
+
+	/**
+	 * Coalesce this snapshot with the following one.
+	 *
+	 * @param next a snapshot produced after this one
+	 * @return a snapshot equivalent to applying this and next in sequence
+	 */
+	public SolutionSnapshot merge(SolutionSnapshot next) {
+		int[] mergedVariables = new int[variables.length + next.variables.length];
+		int[] mergedValues = new int[mergedVariables.length];
+		int i = 0, j = 0, k = 0;
+
+		// merge the sorted deltas, values of next win
+		while (i < variables.length || j < next.variables.length) {
+			if (j == next.variables.length || i < variables.length && variables[i] < next.variables[j]) {
+				mergedVariables[k] = variables[i];
+				mergedValues[k++] = values[i++];
+			} else {
+				if (i < variables.length && variables[i] == next.variables[j])
+					i++;
+				mergedVariables[k] = next.variables[j];
+				mergedValues[k++] = next.values[j++];
+			}
+		}
+
+		return new SolutionSnapshot(next.iteration, Arrays.copyOf(mergedVariables, k), Arrays.copyOf(mergedValues, k),
+				next.utility, next.last);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Iteration %d, utility %.3f, %d changed variables%s", iteration, utility,
+				variables.length, last ? " (last)" : "");
+	}
+
+}
@@ -0,0 +1,471 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import algorithm.MaxSum;
+import algorithm.Solution;
+import factorgraph.FactorGraph;
+import parser.FactorGraphBuilder;
+import parser.XCSPparser;
+import problem.InstanceGenerator;
+import toolkit.RandomGraphFactory;
+
+/**
+ * Command-line benchmark of MaxSum over XCSP files and generated instances.
+ *
+ * Usage:
+ *
+ * <pre>
+ * BenchmarkRunner [-engine sync|async] [-threads 1,2,4] [-runs N] [-warmup N]
+ *                 [-iterations N] [-seed S] [-fixed BITS] [-o report.csv|report.json]
+ *                 instance...
+ * BenchmarkRunner -compare base.csv|base.json new.csv|new.json
+ * </pre>
+ *
+ * An instance is an XCSP file, a directory of XCSP files, or a generated
+ * family, given as one of:
+ *
+ * <pre>
+ * random:nbrVariables:nbrConstraints:domainSize
+ * scale-free:nbrVariables:nbrEdgesPerNode:domainSize
+ * small-world:nbrVariables:nbrNeighbours:domainSize
+ * colouring:nbrAgents:nbrEdges:nbrColours
+ * meetings:nbrAgents:nbrMeetings:nbrAgentsPerMeeting:nbrSlots
+ * </pre>
+ *
+ * Each run parses and builds its instance again, so that all runs start from
+ * the same messages. The threads sweep only applies to the async engine. With
+ * -fixed, messages are in fixed point with BITS fractional bits, and the engine
+ * is reported as e.g. sync/fixed8.
+ *
+ * @author Luca CPZ
+ */
+public class BenchmarkRunner {
+
+	static final String[] COLUMNS = new String[] { "instance", "engine", "threads", "run", "parseMs", "buildMs",
+			"solveMs", "iterations", "converged", "messages", "messagesPerSecond", "peakHeapBytes", "utility" };
+
+	/** The measures of a run. */
+	static class Record {
+
+		String instance, engine;
+		int threads, run;
+		double parseMs, buildMs, solveMs;
+		long iterations;
+		boolean converged;
+		long messages;
+		double messagesPerSecond;
+		long peakHeapBytes;
+		float utility;
+
+		Object[] getValues() {
+			return new Object[] { instance, engine, threads, run, parseMs, buildMs, solveMs, iterations, converged,
+					messages, messagesPerSecond, peakHeapBytes, utility };
+		}
+
+		static Record parse(Map<String, String> values) {
+			Record r = new Record();
+			r.instance = values.get("instance");
+			r.engine = values.get("engine");
+			r.threads = Integer.parseInt(values.get("threads"));
+			r.run = Integer.parseInt(values.get("run"));
+			r.parseMs = Double.parseDouble(values.get("parseMs"));
+			r.buildMs = Double.parseDouble(values.get("buildMs"));
+			r.solveMs = Double.parseDouble(values.get("solveMs"));
+			r.iterations = Long.parseLong(values.get("iterations"));
+			r.converged = Boolean.parseBoolean(values.get("converged"));
+			r.messages = Long.parseLong(values.get("messages"));
+			r.messagesPerSecond = Double.parseDouble(values.get("messagesPerSecond"));
+			r.peakHeapBytes = Long.parseLong(values.get("peakHeapBytes"));
+			r.utility = Float.parseFloat(values.get("utility"));
+			return r;
+		}
+
+		// runs of the same configuration have the same key
+		String getKey() {
+			return instance + "," + engine + "," + threads;
+		}
+	}
+
+	private String engine = "sync";
+	private int[] threads = new int[] { 0 };
+	private int runs = 5, warmup = 2, iterations;
+	private long seed = 42;
+	private int fractionBits = -1;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 3 && args[0].equals("-compare")) {
+			compare(read(new File(args[1])), read(new File(args[2])));
+			return;
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner();
+		File output = null;
+		List<String> instances = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-engine":
+				runner.engine = args[++i];
+				break;
+			case "-threads":
+				runner.threads = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+				break;
+			case "-runs":
+				runner.runs = Integer.parseInt(args[++i]);
+				break;
+			case "-warmup":
+				runner.warmup = Integer.parseInt(args[++i]);
+				break;
+			case "-iterations":
+				runner.iterations = Integer.parseInt(args[++i]);
+				break;
+			case "-seed":
+				runner.seed = Long.parseLong(args[++i]);
+				break;
+			case "-fixed":
+				runner.fractionBits = Integer.parseInt(args[++i]);
+				break;
+			case "-o":
+				output = new File(args[++i]);
+				break;
+			default:
+				instances.addAll(getInstances(args[i]));
+			}
+		}
+
+		if (instances.isEmpty() || runner.runs < 1
+				|| !runner.engine.equals("sync") && !runner.engine.equals("async")) {
+			System.err.println("Usage: BenchmarkRunner [-engine sync|async] [-threads 1,2,4] [-runs N] [-warmup N] "
+					+ "[-iterations N] [-seed S] [-fixed BITS] [-o report.csv|report.json] instance...\n"
+					+ "       BenchmarkRunner -compare base.csv new.csv");
+			System.exit(1);
+		}
+
+		List<Record> records = new ArrayList<Record>();
+		for (String instance : instances) {
+			try {
+				records.addAll(runner.benchmark(instance));
+			} catch (RuntimeException e) {
+				System.err.println("Skipping " + instance + ": " + e);
+			}
+		}
+
+		if (output != null)
+			write(records, output);
+		else
+			write(records, new PrintWriter(System.out, true), false);
+	}
+
+	// the XCSP files of a directory, sorted by name, or the instance itself
+	private static List<String> getInstances(String arg) {
+		File f = new File(arg);
+		if (!f.isDirectory())
+			return Arrays.asList(arg);
+
+		File[] files = f.listFiles((dir, name) -> name.endsWith(".xml"));
+		Arrays.sort(files);
+		List<String> instances = new ArrayList<String>(files.length);
+		for (File file : files)
+			instances.add(file.getPath());
+		return instances;
+	}
+
+	/**
+	 * Runs an instance with each threads number, after warm-up runs.
+	 *
+	 * @param instance an XCSP file or a generated family
+	 * @return the measures of each run, warm-up runs excluded
+	 */
+	List<Record> benchmark(String instance) {
+		List<Record> records = new ArrayList<Record>();
+		int[] sweep = engine.equals("async") ? threads : new int[] { 1 };
+		for (int t : sweep) {
+			for (int run = -warmup; run < runs; run++) {
+				Record r = run(instance, t);
+				r.run = run;
+				if (run >= 0)
+					records.add(r);
+			}
+			System.err.println(summarise(records.subList(records.size() - runs, records.size())));
+		}
+		return records;
+	}
+
+	private Record run(String instance, int threadsNumber) {
+		Record r = new Record();
+		r.instance = instance;
+		r.engine = fractionBits >= 0 ? engine + "/fixed" + fractionBits : engine;
+		r.threads = threadsNumber;
+
+		System.gc();
+		List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				pools.add(pool);
+			}
+
+		long t = System.nanoTime();
+		FactorGraph graph;
+		if (new File(instance).isFile()) {
+			XCSPparser parser = new XCSPparser(instance);
+			r.parseMs = (System.nanoTime() - t) / 1e6;
+			t = System.nanoTime();
+			graph = FactorGraphBuilder.build(parser);
+		} else
+			graph = generate(instance);
+		r.buildMs = (System.nanoTime() - t) / 1e6;
+		graph.setFixedPoint(fractionBits);
+
+		MaxSum maxSum = new MaxSum(graph);
+		maxSum.setTracing(false);
+		maxSum.setThreadsNumber(threadsNumber);
+		if (iterations > 0)
+			maxSum.setIterationsNumber(iterations);
+
+		t = System.nanoTime();
+		if (engine.equals("async"))
+			maxSum.solve();
+		else
+			maxSum.solveSynchronous();
+		r.solveMs = (System.nanoTime() - t) / 1e6;
+
+		Solution solution = maxSum.getSolution();
+		r.iterations = solution.getIterations();
+		r.converged = solution.isConverged();
+		r.utility = solution.getUtility();
+		r.messages = maxSum.getMessagesNumber();
+		r.messagesPerSecond = r.solveMs > 0 ? r.messages * 1e3 / r.solveMs : 0;
+		for (MemoryPoolMXBean pool : pools)
+			r.peakHeapBytes += pool.getPeakUsage().getUsed();
+		return r;
+	}
+
+	private FactorGraph generate(String family) {
+		String[] spec = family.split(":");
+		int[] p = new int[spec.length - 1];
+		for (int i = 0; i < p.length; i++)
+			p[i] = Integer.parseInt(spec[i + 1]);
+
+		InstanceGenerator generator = new InstanceGenerator(seed);
+		switch (spec[0]) {
+		case "random":
+			return generator.getRandomBinaryDCOP(p[0], p[1], p[2], 100);
+		case "scale-free":
+			return generator.getRandomBinaryDCOP(
+					RandomGraphFactory.getScaleFreeIntGraph(p[0], p[1], new Random(seed)), p[2], 100);
+		case "small-world":
+			return generator.getRandomBinaryDCOP(
+					RandomGraphFactory.getSmallWorldIntGraph(p[0], p[1], 0.1, new Random(seed)), p[2], 100);
+		case "colouring":
+			return generator.getWeightedGraphColouring(p[0], p[1], p[2]);
+		case "meetings":
+			return generator.getMeetingScheduling(p[0], p[1], p[2], p[3]);
+		default:
+			throw new IllegalArgumentException("unknown instance " + family);
+		}
+	}
+
+	private static String summarise(List<Record> records) {
+		Record first = records.get(0);
+		return String.format("%s %s threads=%d: median solve %.3f ms, %.0f messages/s, utility %.3f", first.instance,
+				first.engine, first.threads, median(records, r -> r.solveMs),
+				median(records, r -> r.messagesPerSecond), median(records, r -> r.utility));
+	}
+
+	private static double median(List<Record> records, ToDoubleFunction<Record> measure) {
+		double[] values = records.stream().mapToDouble(measure).sorted().toArray();
+		int n = values.length;
+		return n % 2 == 1 ? values[n / 2] : (values[n / 2 - 1] + values[n / 2]) / 2;
+	}
+
+	/**
+	 * Prints, for each configuration in both reports, the median measures of
+	 * each report and their relative change.
+	 *
+	 * @param base the records of the baseline report
+	 * @param next the records of the report to compare
+	 */
+	static void compare(List<Record> base, List<Record> next) {
+		Map<String, List<Record>> baseRuns = group(base), nextRuns = group(next);
+		System.out.println(String.format("%-50s %12s %12s %8s %14s %14s %8s", "configuration", "base ms", "new ms",
+				"change", "base msg/s", "new msg/s", "change"));
+		for (Map.Entry<String, List<Record>> e : nextRuns.entrySet()) {
+			List<Record> b = baseRuns.get(e.getKey());
+			if (b == null)
+				continue;
+			double bt = median(b, r -> r.solveMs), nt = median(e.getValue(), r -> r.solveMs);
+			double bm = median(b, r -> r.messagesPerSecond), nm = median(e.getValue(), r -> r.messagesPerSecond);
+			System.out.println(String.format("%-50s %12.3f %12.3f %8s %14.0f %14.0f %8s", e.getKey(), bt, nt,
+					getChange(bt, nt), bm, nm, getChange(bm, nm)));
+		}
+	}
+
+	// the relative change from base to next, n/a if base is 0, e.g. for runs too short to be timed
+	static String getChange(double base, double next) {
+		return base != 0 ? String.format("%+7.1f%%", (next - base) / base * 100) : "n/a";
+	}
+
+	private static Map<String, List<Record>> group(List<Record> records) {
+		Map<String, List<Record>> groups = new LinkedHashMap<String, List<Record>>();
+		for (Record r : records)
+			groups.computeIfAbsent(r.getKey(), k -> new ArrayList<Record>()).add(r);
+		return groups;
+	}
+
+	private static boolean isJson(File f) {
+		return f.getName().endsWith(".json");
+	}
+
+	static void write(List<Record> records, File f) throws IOException {
+		try (PrintWriter out = new PrintWriter(f)) {
+			write(records, out, isJson(f));
+		}
+	}
+
+	/*
+	 * One record per line, so that JSON reports can be read back line by line.
+	 * JSON strings are escaped, and non-finite numbers, such as the utility of an
+	 * infeasible solution, are written as strings, e.g. "-Infinity"; CSV fields
+	 * with a comma, a quote or a line break are quoted.
+	 */
+	private static void write(List<Record> records, PrintWriter out, boolean json) {
+		if (json)
+			out.println("[");
+		else
+			out.println(String.join(",", COLUMNS));
+
+		for (int i = 0; i < records.size(); i++) {
+			Object[] values = records.get(i).getValues();
+			StringBuilder sb = new StringBuilder();
+			for (int c = 0; c < COLUMNS.length; c++) {
+				if (c > 0)
+					sb.append(json ? ", " : ",");
+				if (json)
+					sb.append('"').append(COLUMNS[c]).append("\": ").append(toJson(values[c]));
+				else
+					sb.append(toCsv(values[c].toString()));
+			}
+			out.println(json ? "  {" + sb + (i < records.size() - 1 ? "}," : "}") : sb.toString());
+		}
+
+		if (json)
+			out.println("]");
+		out.flush();
+	}
+
+	private static String toJson(Object value) {
+		if (value instanceof Number && Double.isFinite(((Number) value).doubleValue()) || value instanceof Boolean)
+			return value.toString();
+
+		StringBuilder sb = new StringBuilder("\"");
+		for (char ch : value.toString().toCharArray())
+			if (ch == '"' || ch == '\\')
+				sb.append('\\').append(ch);
+			else if (ch < ' ')
+				sb.append(String.format("\\u%04x", (int) ch));
+			else
+				sb.append(ch);
+		return sb.append('"').toString();
+	}
+
+	private static String toCsv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+			return value;
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	private static final Pattern JSON_FIELD = Pattern.compile("\"(\\w+)\": (\"(?:[^\"\\\\]|\\\\.)*\"|[^,}]+)");
+	private static final Pattern JSON_ESCAPE = Pattern.compile("\\\\(u[0-9a-fA-F]{4}|.)");
+
+	static List<Record> read(File f) throws IOException {
+		List<Record> records = new ArrayList<Record>();
+		if (!isJson(f)) {
+			List<List<String>> rows = parseCsv(new String(Files.readAllBytes(f.toPath())));
+			for (List<String> fields : rows.subList(Math.min(1, rows.size()), rows.size())) {
+				Map<String, String> values = new LinkedHashMap<String, String>();
+				for (int c = 0; c < COLUMNS.length; c++)
+					values.put(COLUMNS[c], fields.get(c));
+				records.add(Record.parse(values));
+			}
+			return records;
+		}
+
+		List<String> lines = Files.readAllLines(f.toPath());
+		for (int i = 1; i < lines.size(); i++) {
+			Map<String, String> values = new LinkedHashMap<String, String>();
+			Matcher m = JSON_FIELD.matcher(lines.get(i));
+			while (m.find())
+				values.put(m.group(1), fromJson(m.group(2)));
+			if (!values.isEmpty())
+				records.add(Record.parse(values));
+		}
+		return records;
+	}
+
+	private static String fromJson(String value) {
+		if (!value.startsWith("\""))
+			return value.trim();
+
+		Matcher m = JSON_ESCAPE.matcher(value.substring(1, value.length() - 1));
+		StringBuilder sb = new StringBuilder();
+		while (m.find()) {
+			String escape = m.group(1);
+			char ch = escape.length() > 1 ? (char) Integer.parseInt(escape.substring(1), 16) : escape.charAt(0);
+			m.appendReplacement(sb, Matcher.quoteReplacement(String.valueOf(ch)));
+		}
+		return m.appendTail(sb).toString();
+	}
+
+	// the rows of a CSV text, whose quoted fields can contain commas, quotes and line breaks
+	private static List<List<String>> parseCsv(String text) {
+		List<List<String>> rows = new ArrayList<List<String>>();
+		List<String> row = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			if (quoted) {
+				if (ch != '"')
+					field.append(ch);
+				else if (i + 1 < text.length() && text.charAt(i + 1) == '"')
+					field.append(text.charAt(++i));
+				else
+					quoted = false;
+			} else if (ch == '"')
+				quoted = true;
+			else if (ch == ',') {
+				row.add(field.toString());
+				field.setLength(0);
+			} else if (ch == '\n') {
+				row.add(field.toString());
+				field.setLength(0);
+				if (row.size() > 1 || !row.get(0).isEmpty())
+					rows.add(row);
+				row = new ArrayList<String>();
+			} else if (ch != '\r')
+				field.append(ch);
+		}
+		if (field.length() > 0 || !row.isEmpty()) {
+			row.add(field.toString());
+			rows.add(row);
+		}
+		return rows;
+	}
+
+}
@@ -1,9 +1,14 @@
 package dcop;
 
+import java.util.Arrays;
+
 import toolkit.Checker;
 
 public abstract class Function {
 
+	/** Largest joint space of a function that is tabulated */
+	public static final int TABULATION_LIMIT = 1 << 20;
+
 	protected DecisionVariable[] decisionVariables;
 	protected String id;
 
@@ -26,6 +31,62 @@ public abstract class Function {
 		return id;
 	}
 
+	/**
+	 * @param d the value of each decision variable
+	 * @return the utility of d
+	 */
 	public abstract float evaluate(Number[] d);
 
+	/**
+	 * Primitive form of evaluate(Number[]), used by the factor graph. Callers
+	 * reuse values between calls, so implementations must not keep it.
+	 *
+	 * This implementation boxes values and calls evaluate(Number[]), so that
+	 * functions only defining the latter keep working; built-in functions
+	 * override it without allocating.
+	 *
+	 * @param values the value of each decision variable
+	 * @return the utility of values
+	 */
+	public float evaluate(int[] values) {
+		Integer[] d = new Integer[values.length];
+		for (int i = 0; i < d.length; i++)
+			d[i] = values[i];
+		return evaluate(d);
+	}
+
+	/**
+	 * Functions with the same table key have the same utility for every joint
+	 * assignment, so their table can be computed once and shared.
+	 *
+	 * @return the table key of this function, null if its utilities are not a
+	 *         function of its arguments only, or must not be tabulated
+	 */
+	public String getTableKey() {
+		return null;
+	}
+
+	/**
+	 * @return whether the joint space of this function is at most
+	 *         TABULATION_LIMIT, so that its table key may be given
+	 */
+	protected boolean isTabulable() {
+		long size = 1;
+		for (DecisionVariable x : decisionVariables)
+			if ((size *= x.getDomain().length) > TABULATION_LIMIT)
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return a key made of the class of this function and the domains of its
+	 *         variables
+	 */
+	protected String getDomainsKey() {
+		StringBuilder sb = new StringBuilder(getClass().getName());
+		for (DecisionVariable x : decisionVariables)
+			sb.append(Arrays.toString(x.getDomain()));
+		return sb.toString();
+	}
+
 }
\ No newline at end of file
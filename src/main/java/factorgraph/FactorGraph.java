@@ -1,7 +1,10 @@
 package factorgraph;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 
@@ -9,6 +12,7 @@ import dcop.Agent;
 import dcop.DecisionVariable;
 import dcop.Function;
 import toolkit.Checker;
+import toolkit.FixedPoint;
 
 public class FactorGraph {
 
@@ -18,6 +22,22 @@ public class FactorGraph {
 	private FunctionNode[] functionNodes;
 	private Map<FunctionNode, HashSet<VariableNode>> edges;
 
+	// the nodes in array order, and the node of each function, kept up to date by incremental changes
+	private LinkedHashSet<Agent> agentSet;
+	private LinkedHashSet<VariableNode> variableSet;
+	private LinkedHashSet<FunctionNode> functionSet;
+	private Map<Function, FunctionNode> functionNodeOf = new IdentityHashMap<Function, FunctionNode>();
+
+	// number of nested update() calls, during which the arrays are not rebuilt
+	private int updates;
+	private boolean functionsChanged;
+
+	// shares joint spaces and tables among the function nodes, including those added later
+	private TableInterner interner = new TableInterner();
+
+	// number of fractional bits of fixed-point messages, negative for float messages
+	private int fractionBits = -1;
+
 	public FactorGraph(Agent[] agents, Function[] functions) {
 		if (Checker.assertive) {
 			Checker.check(agents != null && agents.length > 0, "agents array is null");
@@ -29,21 +49,234 @@ public class FactorGraph {
 		edges = new HashMap<FunctionNode, HashSet<VariableNode>>();
 
 		// add variable nodes
-		LinkedHashSet<VariableNode> agentsVariableNodes = new LinkedHashSet<VariableNode>();
+		agentSet = new LinkedHashSet<Agent>(Arrays.asList(agents));
+		variableSet = new LinkedHashSet<VariableNode>();
 		for (Agent a : agents)
 			for (DecisionVariable x : a.getDecisionVariables())
-				agentsVariableNodes.add(x.getVariableNode());
-		variableNodes = agentsVariableNodes.toArray(new VariableNode[agentsVariableNodes.size()]);
+				variableSet.add(x.getVariableNode());
+		variableNodes = variableSet.toArray(new VariableNode[variableSet.size()]);
 
-		// add function nodes
+		// add function nodes, sharing tables
 		FunctionNode fn;
 		for (Function f : functions) {
-			fn = new FunctionNode(f);
+			fn = new FunctionNode(f, interner);
+			functionNodeOf.put(f, fn);
 			// add edges
 			for (DecisionVariable x : f.getDecisionVariables())
 				insertEdge(fn, x.getVariableNode());
 		}
 		functionNodes = edges.keySet().toArray(new FunctionNode[0]);
+		functionSet = new LinkedHashSet<FunctionNode>(Arrays.asList(functionNodes));
+
+		index();
+	}
+
+	// index nodes, so that per-node data can be stored in plain arrays, and set their message mode
+	private void index() {
+		for (int i = 0; i < variableNodes.length; i++) {
+			variableNodes[i].setIndex(i);
+			variableNodes[i].setFixedPoint(fractionBits);
+		}
+		for (int i = 0; i < functionNodes.length; i++) {
+			functionNodes[i].setIndex(i);
+			functionNodes[i].setFixedPoint(fractionBits);
+		}
+	}
+
+	/**
+	 * Switches the messages of all the nodes, including those added later, to
+	 * fixed point: utilities and messages are quantised to multiples of
+	 * 2^-fractionBits and summed as saturating integers, so that each message
+	 * does not depend on the order of its terms. The messages of each edge are
+	 * then stored as ints on its function node, and getR() and getQ() return
+	 * float copies of them. Current messages are converted in both directions.
+	 *
+	 * @param fractionBits the number of fractional bits, at most
+	 *                     FixedPoint.MAX_FRACTION_BITS, or negative for float
+	 *                     messages
+	 * @throws IllegalArgumentException if fractionBits is too large
+	 */
+	public void setFixedPoint(int fractionBits) {
+		if (fractionBits > FixedPoint.MAX_FRACTION_BITS)
+			throw new IllegalArgumentException("fixed point with " + fractionBits + " fractional bits; at most "
+					+ FixedPoint.MAX_FRACTION_BITS + " are supported");
+
+		this.fractionBits = fractionBits;
+		index();
+	}
+
+	/**
+	 * @return the number of fractional bits of fixed-point messages, negative for
+	 *         float messages
+	 */
+	public int getFixedPoint() {
+		return fractionBits;
+	}
+
+	/*
+	 * Incremental changes. Nodes that are not removed keep their messages and
+	 * values, so that a new execution starts from the last state of the previous
+	 * one. Node indices change, and the graph must not be changed during an
+	 * execution. Each change costs O(1) per edge, plus one rebuild of the node
+	 * arrays, which update() defers to the end of a batch of changes.
+	 */
+
+	/**
+	 * Applies a batch of changes with a single rebuild of the node arrays and
+	 * indices, which are not updated until changes returns. Added nodes are
+	 * appended in the order in which they are added.
+	 *
+	 * @param changes calls the methods that change this graph
+	 */
+	public void update(Runnable changes) {
+		updates++;
+		try {
+			changes.run();
+		} finally {
+			if (--updates == 0)
+				rebuild();
+		}
+	}
+
+	/**
+	 * Adds an agent and the variable nodes of its decision variables.
+	 *
+	 * @param agent an agent whose variables are not in this graph
+	 */
+	public void addAgent(Agent agent) {
+		if (Checker.assertive)
+			for (DecisionVariable x : agent.getDecisionVariables())
+				Checker.check(!contains(x), "variable " + x + " is already in the graph");
+
+		agentSet.add(agent);
+		for (DecisionVariable x : agent.getDecisionVariables())
+			variableSet.add(x.getVariableNode());
+
+		changed();
+	}
+
+	/**
+	 * Removes an agent, the variable nodes of its decision variables and the
+	 * function nodes adjacent to them.
+	 *
+	 * @param agent an agent of this graph
+	 */
+	public void removeAgent(Agent agent) {
+		if (!agentSet.remove(agent))
+			throw new IllegalArgumentException("agent " + agent.getId() + " is not in the graph");
+
+		for (DecisionVariable x : agent.getDecisionVariables()) {
+			VariableNode vn = x.getVariableNode();
+			for (FunctionNode fn : new ArrayList<FunctionNode>(vn.getNeighbours()))
+				detach(fn);
+			variableSet.remove(vn);
+		}
+
+		changed();
+	}
+
+	/**
+	 * Adds a function node, whose messages start from zero.
+	 *
+	 * @param function a function whose variables are in this graph
+	 * @return the new function node
+	 */
+	public FunctionNode addFunction(Function function) {
+		for (DecisionVariable x : function.getDecisionVariables())
+			if (!contains(x))
+				throw new IllegalArgumentException("variable " + x + " of " + function + " is not in the graph");
+
+		FunctionNode fn = new FunctionNode(function, interner);
+		for (DecisionVariable x : function.getDecisionVariables())
+			insertEdge(fn, x.getVariableNode());
+		functionSet.add(fn);
+		functionNodeOf.put(function, fn);
+
+		functionsChanged = true;
+		changed();
+		return fn;
+	}
+
+	/**
+	 * Removes the function node of a function.
+	 *
+	 * @param function a function of this graph
+	 */
+	public void removeFunction(Function function) {
+		detach(getFunctionNode(function));
+		changed();
+	}
+
+	/**
+	 * Replaces a function, e.g. to change its weights. If both functions have the
+	 * same variables, the function node is kept with its messages; otherwise, the
+	 * old node is removed and a new one is added.
+	 *
+	 * @param oldFunction a function of this graph
+	 * @param newFunction the function replacing it
+	 * @return the function node of newFunction
+	 */
+	public FunctionNode replaceFunction(Function oldFunction, Function newFunction) {
+		FunctionNode fn = getFunctionNode(oldFunction);
+
+		if (!Arrays.equals(oldFunction.getDecisionVariables(), newFunction.getDecisionVariables())) {
+			removeFunction(oldFunction);
+			return addFunction(newFunction);
+		}
+
+		fn.setFunction(newFunction, interner);
+		functionNodeOf.remove(oldFunction);
+		functionNodeOf.put(newFunction, fn);
+
+		functionsChanged = true;
+		changed();
+		return fn;
+	}
+
+	/**
+	 * @param function a function
+	 * @return the function node of function
+	 */
+	public FunctionNode getFunctionNode(Function function) {
+		FunctionNode fn = functionNodeOf.get(function);
+		if (fn == null)
+			throw new IllegalArgumentException("function " + function + " is not in the graph");
+		return fn;
+	}
+
+	private boolean contains(DecisionVariable x) {
+		return variableSet.contains(x.getVariableNode());
+	}
+
+	// removes a function node and its edges
+	private void detach(FunctionNode fn) {
+		for (VariableNode vn : fn.getNeighbours())
+			vn.removeNeighbour(fn);
+		edges.remove(fn);
+		functionSet.remove(fn);
+		functionNodeOf.remove(fn.getFunction());
+		functionsChanged = true;
+	}
+
+	private void changed() {
+		if (updates == 0)
+			rebuild();
+	}
+
+	// rebuilds the node arrays from the node sets, keeping the order of the remaining nodes
+	private void rebuild() {
+		agents = agentSet.toArray(new Agent[agentSet.size()]);
+		variableNodes = variableSet.toArray(new VariableNode[variableSet.size()]);
+
+		if (functionsChanged) {
+			functionNodes = functionSet.toArray(new FunctionNode[functionSet.size()]);
+			functions = new Function[functionNodes.length];
+			for (int i = 0; i < functions.length; i++)
+				functions[i] = functionNodes[i].getFunction();
+			functionsChanged = false;
+		}
+
+		index();
 	}
 
 	private void insertEdge(FunctionNode a, VariableNode b) {
@@ -78,4 +311,32 @@ public class FactorGraph {
 		return variableNodes.length + functionNodes.length;
 	}
 
+	/**
+	 * Computes the global utility of an assignment, that is, the sum of the
+	 * utilities of all functions.
+	 *
+	 * @param assignment the value of each variable, aligned with variableNodes
+	 * @return the global utility of assignment
+	 */
+	public float evaluate(int[] assignment) {
+		if (Checker.assertive)
+			Checker.check(assignment.length == variableNodes.length, "assignment length is not valid");
+
+		float u = 0;
+		int[][] args = new int[1][]; // by arity
+		for (FunctionNode fn : functionNodes) {
+			VariableNode[] neighbours = fn.getNeighbours();
+			if (neighbours.length >= args.length)
+				args = Arrays.copyOf(args, neighbours.length + 1);
+			if (args[neighbours.length] == null)
+				args[neighbours.length] = new int[neighbours.length];
+
+			int[] a = args[neighbours.length];
+			for (int i = 0; i < a.length; i++)
+				a[i] = assignment[neighbours[i].getIndex()];
+			u += fn.evaluate(a);
+		}
+		return u;
+	}
+
 }
\ No newline at end of file
@@ -1,13 +1,15 @@
 package factorgraph;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 
 import dcop.DecisionVariable;
 import dcop.Function;
+import function.SparseTable;
+import function.SparseTableFunction;
+import function.UtilityTable;
 import toolkit.Checker;
-import toolkit.Mathematics;
+import toolkit.FixedPoint;
 import toolkit.Utils;
 
 public class FunctionNode {
@@ -15,21 +17,63 @@ public class FunctionNode {
 	private Function function;
 	private VariableNode[] neighbours;
 
-	// list of all possible values of the arguments of this.function
-	private List<List<Integer>> D;
+	// position of this node in FactorGraph.getFunctionNodes()
+	private int index;
+
+	// domain of each argument of this.function, and number of joint assignments if it is not sparse
+	private int[][] domains;
+	private int size;
+
+	// utility of each joint assignment in row-major order, possibly shared, null if this.function is not tabulated
+	private UtilityTable table;
+
+	// table of this.function if it is sparse, and the buffers reused by sendSparseRMessageTo
+	private SparseTable sparseTable;
+	private SparseTable.Workspace workspace;
+	private float[][] sparseQ;
+	private float[] sparseR;
 
 	// last produced messages from this FunctionNode to neighbour VariableNodes
 	private HashMap<VariableNode, HashMap<Integer, Float>> R;
 
+	// arguments of this.function and their domain indices, reused by sendRMessageTo
+	private int[] args, digits;
+
+	// number of fractional bits of fixed-point messages, negative for float messages
+	private int fractionBits = -1;
+
+	/*
+	 * In fixed point, the messages of each edge are stored here by domain index,
+	 * instead of in R and VariableNode.Q, which are only updated when read:
+	 * fixedR[k] and fixedQ[k] are the messages to and from neighbours[k]. Both
+	 * are null for float messages.
+	 */
+	private int[][] fixedR, fixedQ;
+
+	// the fixed-point table, and the Q messages summed by sendFixedPointRMessageTo, with -infinity for the target
+	private int[] fixedUtilities, infinite;
+	private int[][] terms;
+
 	public FunctionNode(Function function) {
+		this(function, new TableInterner());
+	}
+
+	/**
+	 * @param function the function of this node
+	 * @param interner provides the table of function, shared with the other nodes
+	 *                 of the factor graph
+	 */
+	FunctionNode(Function function, TableInterner interner) {
 		if (Checker.assertive)
 			Checker.check(function != null, "input Function is null");
 
 		this.function = function;
 		DecisionVariable[] decisionVariables = function.getDecisionVariables();
 		neighbours = new VariableNode[decisionVariables.length];
+		args = new int[neighbours.length];
+		digits = new int[neighbours.length];
+		domains = new int[neighbours.length][];
 		R = new HashMap<VariableNode, HashMap<Integer, Float>>();
-		D = new ArrayList<List<Integer>>();
 
 		/*
 		 * for every DecisionVariable x that is argument of this.function, x's
@@ -38,16 +82,13 @@ public class FunctionNode {
 		for (int i = 0; i < decisionVariables.length; i++) {
 			neighbours[i] = decisionVariables[i].getVariableNode();
 			neighbours[i].addNeighbour(this);
+			domains[i] = decisionVariables[i].getDomain();
 
 			// initialise to 0 the R messages from node to this VariableNode
 			R.put(neighbours[i], Utils.getZeroMessages(decisionVariables[i].getDomain()));
-
-			// D.add(Arrays.stream(decisionVariables[i].getDomain()).boxed().collect(Collectors.toList()));
-			D.add(Utils.arr2List(decisionVariables[i].getDomain()));
 		}
 
-		// compute the space of joint assignments to the variables of this.function
-		D = Mathematics.computeCombinations(D);
+		setTable(interner);
 	}
 
 	@Override
@@ -59,21 +100,181 @@ public class FunctionNode {
 		return function;
 	}
 
+	/**
+	 * Replaces the function of this node with one of the same variables, keeping
+	 * the messages.
+	 *
+	 * @param function the new function
+	 * @param interner provides the table of function
+	 */
+	void setFunction(Function function, TableInterner interner) {
+		if (Checker.assertive)
+			Checker.check(Arrays.equals(function.getDecisionVariables(), this.function.getDecisionVariables()),
+					"the variables of the new function are different");
+
+		this.function = function;
+		setTable(interner);
+	}
+
+	/*
+	 * The joint assignments of a sparse function are never enumerated, so its
+	 * joint space can be larger than an array; the others are enumerated in
+	 * row-major order, without storing them.
+	 */
+	private void setTable(TableInterner interner) {
+		fixedUtilities = null;
+		sparseTable = null;
+		workspace = null;
+		sparseQ = null;
+		sparseR = null;
+		table = null;
+		if (function instanceof SparseTableFunction) {
+			sparseTable = ((SparseTableFunction) function).getTable();
+			workspace = sparseTable.newWorkspace();
+			sparseQ = new float[domains.length][];
+			int maxSize = 0;
+			for (int k = 0; k < domains.length; k++) {
+				sparseQ[k] = new float[domains[k].length];
+				maxSize = Math.max(maxSize, domains[k].length);
+			}
+			sparseR = new float[maxSize];
+			return;
+		}
+
+		int[] sizes = new int[domains.length];
+		for (int i = 0; i < sizes.length; i++)
+			sizes[i] = domains[i].length;
+		size = UtilityTable.getSize(sizes);
+		table = interner.getTable(function);
+
+		// setFixedPoint is not called again if the number of fractional bits does not change
+		if (table != null && fractionBits >= 0)
+			fixedUtilities = table.getFixedPoint(fractionBits);
+	}
+
+	/**
+	 * @return the utility of each joint assignment, possibly shared with other
+	 *         nodes, or null if this.function is not tabulated
+	 */
+	public UtilityTable getTable() {
+		return table;
+	}
+
 	public VariableNode[] getNeighbours() {
 		return this.neighbours;
 	}
 
+	public int getIndex() {
+		return index;
+	}
+
+	void setIndex(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Switches the messages of the edges of this node to fixed point, or back to
+	 * float, converting them.
+	 *
+	 * @param fractionBits the number of fractional bits of fixed-point messages,
+	 *                     negative for float messages
+	 */
+	void setFixedPoint(int fractionBits) {
+		if (fractionBits == this.fractionBits)
+			return;
+
+		// the float messages, updated from the current fixed-point ones, if any
+		for (VariableNode vn : neighbours) {
+			getR(vn);
+			vn.getQ(this);
+		}
+
+		fixedR = fixedQ = terms = null;
+		fixedUtilities = infinite = null;
+		this.fractionBits = fractionBits;
+		if (fractionBits < 0)
+			return;
+
+		int maxSize = 0;
+		fixedR = new int[neighbours.length][];
+		fixedQ = new int[neighbours.length][];
+		for (int k = 0; k < neighbours.length; k++) {
+			fixedR[k] = quantise(R.get(neighbours[k]), domains[k]);
+			fixedQ[k] = quantise(neighbours[k].getQ(this), domains[k]);
+			maxSize = Math.max(maxSize, domains[k].length);
+		}
+		terms = new int[neighbours.length][];
+		infinite = new int[maxSize];
+		Arrays.fill(infinite, FixedPoint.NEGATIVE_INFINITY);
+		fixedUtilities = table != null ? table.getFixedPoint(fractionBits) : null;
+	}
+
+	private int[] quantise(HashMap<Integer, Float> message, int[] domain) {
+		int[] fixed = new int[domain.length];
+		for (int j = 0; j < domain.length; j++)
+			fixed[j] = FixedPoint.quantise(message.get(domain[j]), fractionBits);
+		return fixed;
+	}
+
+	/**
+	 * @return the number of fractional bits of fixed-point messages, negative for
+	 *         float messages
+	 */
+	int getFixedPoint() {
+		return fractionBits;
+	}
+
+	/**
+	 * @param k the position of a neighbour
+	 * @return the fixed-point R message to neighbours[k], by domain index, or null
+	 *         for float messages
+	 */
+	int[] getFixedR(int k) {
+		return fixedR != null ? fixedR[k] : null;
+	}
+
+	/**
+	 * @param k the position of a neighbour
+	 * @return the fixed-point Q message from neighbours[k], by domain index, or
+	 *         null for float messages
+	 */
+	int[] getFixedQ(int k) {
+		return fixedQ != null ? fixedQ[k] : null;
+	}
+
+	/**
+	 * @param vn a neighbour
+	 * @return the R message to vn; in fixed point, a copy of the current message
+	 */
 	public HashMap<Integer, Float> getR(VariableNode vn) {
-		return R.get(vn);
+		HashMap<Integer, Float> Rnode = R.get(vn);
+		if (fixedR != null) {
+			int k = getVarIndex(vn);
+			for (int j = 0; j < domains[k].length; j++)
+				Rnode.put(domains[k][j], FixedPoint.toFloat(fixedR[k][j], fractionBits));
+		}
+		return Rnode;
 	}
 
 	protected boolean setR(VariableNode vn, int d, float r) {
 		HashMap<Integer, Float> Rnode = R.get(vn);
 
 		Rnode.put(d, r);
+		if (fixedR != null) {
+			int k = getVarIndex(vn);
+			fixedR[k][indexOf(domains[k], d)] = FixedPoint.quantise(r, fractionBits);
+		}
 		return R.put(vn, Rnode) != null;
 	}
 
+	// the position of the value d in domain
+	static int indexOf(int[] domain, int d) {
+		for (int j = 0; j < domain.length; j++)
+			if (domain[j] == d)
+				return j;
+		throw new IllegalArgumentException(d + " is not in " + Arrays.toString(domain));
+	}
+
 	/**
 	 * Returns the index of vn.getDecisionVariable() in this.function
 	 *
@@ -98,26 +299,141 @@ public class FunctionNode {
 		return function.evaluate(d);
 	}
 
+	/**
+	 * Primitive form of evaluate(Number[]).
+	 *
+	 * @param values the value assigned to each DecisionVariable in this.function
+	 * @return evaluation of values with this.function
+	 */
+	public float evaluate(int[] values) {
+		return function.evaluate(values);
+	}
+
 	public double sendRMessageTo(VariableNode i) {
+		if (sparseTable != null)
+			return sendSparseRMessageTo(i);
+		if (fractionBits >= 0)
+			return sendFixedPointRMessageTo(i);
+
 		setR(i, i.getX(), Float.NEGATIVE_INFINITY);
 
 		int idx = getVarIndex(i);
-		Float curr, sigma;
+		Float curr;
+		float sigma;
+
+		Arrays.fill(digits, 0);
+		for (int row = 0; row < size; row++) {
+			for (int k = 0; k < args.length; k++)
+				args[k] = domains[k][digits[k]];
+			sigma = table != null ? table.get(row) : evaluate(args);
+
+			for (int k = 0; k < args.length; k++)
+				if (k != idx)
+					sigma = Utils.checkedSum(sigma, neighbours[k].getQ(this).get(args[k]));
+
+			curr = R.get(i).get(args[idx]);
+			setR(i, args[idx], curr != null ? Math.max(sigma, curr) : sigma);
+
+			nextAssignment();
+		}
+
+		return R.get(i).get(i.getX());
+	}
+
+	// moves digits to the next joint assignment in row-major order
+	private void nextAssignment() {
+		for (int k = digits.length - 1; k >= 0 && ++digits[k] == domains[k].length; k--)
+			digits[k] = 0;
+	}
+
+	/**
+	 * Same as sendRMessageTo, but only iterates the listed assignments of
+	 * sparseTable, the others being handled by SparseTable.maximise.
+	 */
+	private double sendSparseRMessageTo(VariableNode i) {
+		int idx = getVarIndex(i);
 
-		for (List<Integer> l : D) {
-			sigma = evaluate(l.toArray(new Integer[l.size()]));
+		for (int k = 0; k < neighbours.length; k++)
+			if (k != idx) {
+				int[] domain = domains[k];
+				float[] q = sparseQ[k];
+				if (fixedQ != null)
+					for (int j = 0; j < domain.length; j++)
+						q[j] = FixedPoint.toFloat(fixedQ[k][j], fractionBits);
+				else {
+					HashMap<Integer, Float> Q = neighbours[k].getQ(this);
+					for (int j = 0; j < domain.length; j++)
+						q[j] = Q.get(domain[j]);
+				}
+			}
 
-			for (Integer d_k : l)
-				if (l.indexOf(d_k) != idx)
-					sigma = Utils.checkedSum(sigma, neighbours[l.indexOf(d_k)].getQ(this).get(d_k));
+		int[] domain = domains[idx];
+		float[] sigma = sparseR;
+		sparseTable.maximise(idx, sparseQ, sigma, workspace);
 
-			curr = R.get(i).get(l.get(idx));
-			curr = curr != null ? Math.max(sigma, curr) : sigma;
+		if (fixedR != null) {
+			int[] r = fixedR[idx];
+			int x = indexOf(domain, i.getX());
+			r[x] = FixedPoint.NEGATIVE_INFINITY;
+			for (int j = 0; j < domain.length; j++)
+				r[j] = Math.max(r[j], FixedPoint.quantise(sigma[j], fractionBits));
+			return FixedPoint.toFloat(r[x], fractionBits);
+		}
 
-			setR(i, l.get(idx), curr);
+		setR(i, i.getX(), Float.NEGATIVE_INFINITY);
+		for (int j = 0; j < domain.length; j++) {
+			Float curr = R.get(i).get(domain[j]);
+			setR(i, domain[j], curr != null ? Math.max(sigma[j], curr) : sigma[j]);
 		}
 
 		return R.get(i).get(i.getX());
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Same as sendRMessageTo, in fixed point: the sum of each joint assignment is
+	 * accumulated in a long, so that it does not depend on the order of the
+	 * terms, and -infinity terms are masked out instead of branched on.
+	 */
+	private double sendFixedPointRMessageTo(VariableNode i) {
+		int idx = getVarIndex(i);
+		int[] r = fixedR[idx];
+
+		// the message of the target is replaced by -infinity, which is ignored
+		for (int k = 0; k < terms.length; k++)
+			terms[k] = fixedQ[k];
+		terms[idx] = infinite;
+
+		// as in sendRMessageTo, only R(x) is reset, and the other values keep their maximum
+		int x = indexOf(domains[idx], i.getX());
+		r[x] = FixedPoint.NEGATIVE_INFINITY;
+
+		Arrays.fill(digits, 0);
+		for (int row = 0; row < size; row++) {
+			int u;
+			if (fixedUtilities != null)
+				u = fixedUtilities[row];
+			else {
+				for (int k = 0; k < args.length; k++)
+					args[k] = domains[k][digits[k]];
+				u = FixedPoint.quantise(evaluate(args), fractionBits);
+			}
+
+			// as Utils.checkedSum, -infinity terms are ignored unless all of them are
+			int finite = FixedPoint.finite(u);
+			long sum = u & -finite;
+			for (int k = 0; k < terms.length; k++) {
+				int t = terms[k][digits[k]], f = FixedPoint.finite(t);
+				sum += t & -f;
+				finite |= f;
+			}
+
+			int j = digits[idx];
+			r[j] = Math.max(r[j], FixedPoint.select(finite, sum));
+
+			nextAssignment();
+		}
+
+		return FixedPoint.toFloat(r[x], fractionBits);
+	}
+
+}
@@ -0,0 +1,180 @@
+package factorgraph;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import toolkit.BinaryWriter;
+
+/**
+ * Reads and writes the messages of a factor graph, with the x and z of its
+ * variable nodes, so that an execution can be resumed on a graph of the same
+ * problem.
+ *
+ * The state holds the variables, with their domains, x, z and a counter owned
+ * by the algorithm; then the functions, with the indices of their variables
+ * and a block of floats with the R and then the Q messages of each neighbour,
+ * in domain order. Nodes are matched by name when reading, since the order of
+ * the function nodes is not fixed.
+ *
+ * @author Luca CPZ
+ */
+public class MessageState {
+
+	/**
+	 * @param graph    a factor graph
+	 * @param counters an int for each variable node, aligned with
+	 *                 graph.getVariableNodes()
+	 * @param out      the output
+	 * @throws IOException if out cannot be written
+	 */
+	public static void write(FactorGraph graph, int[] counters, BinaryWriter out) throws IOException {
+		VariableNode[] vns = graph.getVariableNodes();
+		FunctionNode[] fns = graph.getFunctionNodes();
+
+		out.putInt(vns.length);
+		for (int i = 0; i < vns.length; i++) {
+			out.putString(vns[i].toString());
+			out.putInts(vns[i].getDecisionVariable().getDomain());
+			out.putInt(vns[i].getX());
+			out.putFloat(vns[i].getZ());
+			out.putInt(counters[i]);
+		}
+
+		float[] messages = new float[0];
+		out.putInt(fns.length);
+		for (FunctionNode fn : fns) {
+			VariableNode[] neighbours = fn.getNeighbours();
+			out.putString(fn.toString());
+			out.putInt(neighbours.length);
+
+			int n = 0;
+			for (VariableNode vn : neighbours) {
+				out.putInt(vn.getIndex());
+				n += 2 * vn.getDecisionVariable().getDomain().length;
+			}
+			if (messages.length < n)
+				messages = new float[n];
+
+			n = 0;
+			for (VariableNode vn : neighbours) {
+				HashMap<Integer, Float> r = fn.getR(vn), q = vn.getQ(fn);
+				for (int d : vn.getDecisionVariable().getDomain())
+					messages[n++] = r.get(d);
+				for (int d : vn.getDecisionVariable().getDomain())
+					messages[n++] = q.get(d);
+			}
+			out.putFloats(messages, 0, n);
+		}
+	}
+
+	/**
+	 * Restores the state of the nodes of graph that match a node of the state:
+	 * variable nodes with the same name and domain, and function nodes with the
+	 * same name and matching neighbours. The other nodes are left unchanged. The
+	 * state is checked before any node is changed.
+	 *
+	 * @param graph    a factor graph
+	 * @param in       a little-endian buffer positioned on a state written by
+	 *                 write(); it is positioned after it
+	 * @param counters receives the counter of each restored variable node,
+	 *                 aligned with graph.getVariableNodes()
+	 * @return the number of restored nodes
+	 * @throws IOException if the state is truncated or inconsistent
+	 */
+	public static int read(FactorGraph graph, ByteBuffer in, int[] counters) throws IOException {
+		try {
+			read(graph, in.duplicate().order(in.order()), counters, false);
+			return read(graph, in, counters, true);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("truncated message state", e);
+		}
+	}
+
+	// reads the state, only changing the nodes if apply
+	private static int read(FactorGraph graph, ByteBuffer in, int[] counters, boolean apply) throws IOException {
+		Map<String, VariableNode> variableNodes = new HashMap<String, VariableNode>();
+		for (VariableNode vn : graph.getVariableNodes())
+			variableNodes.put(vn.toString(), vn);
+		Map<String, FunctionNode> functionNodes = new HashMap<String, FunctionNode>();
+		for (FunctionNode fn : graph.getFunctionNodes())
+			functionNodes.put(fn.toString(), fn);
+
+		int restored = 0;
+
+		// variable nodes of the state, null if they do not match
+		VariableNode[] vns = new VariableNode[BinaryWriter.getLength(in, 4)];
+		int[] sizes = new int[vns.length];
+		for (int i = 0; i < vns.length; i++) {
+			String name = BinaryWriter.getString(in);
+			VariableNode vn = variableNodes.get(name);
+			int[] domain = BinaryWriter.getInts(in);
+			int x = in.getInt();
+			float z = in.getFloat();
+			int counter = in.getInt();
+
+			if (!contains(domain, x))
+				throw new IOException("variable " + name + " has value " + x + " out of its domain");
+			sizes[i] = domain.length;
+			if (vn == null || !Arrays.equals(domain, vn.getDecisionVariable().getDomain()))
+				continue;
+			vns[i] = vn;
+			if (apply) {
+				vn.setX(x);
+				vn.setZ(z);
+				counters[vn.getIndex()] = counter;
+			}
+			restored++;
+		}
+
+		float[] messages = new float[0];
+		int nbrFunctions = BinaryWriter.getLength(in, 4);
+		for (int i = 0; i < nbrFunctions; i++) {
+			FunctionNode fn = functionNodes.get(BinaryWriter.getString(in));
+			int[] scope = new int[BinaryWriter.getLength(in, 4)];
+			long n = 0;
+			for (int k = 0; k < scope.length; k++) {
+				scope[k] = in.getInt();
+				if (scope[k] < 0 || scope[k] >= vns.length)
+					throw new IOException("function " + fn + " has variable " + scope[k] + " of " + vns.length);
+				n += 2 * sizes[scope[k]];
+			}
+			if (n * 4 > in.remaining())
+				throw new BufferUnderflowException();
+
+			boolean matches = apply && fn != null && fn.getNeighbours().length == scope.length;
+			for (int k = 0; matches && k < scope.length; k++)
+				matches = fn.getNeighbours()[k] == vns[scope[k]];
+			if (!matches) {
+				in.position(in.position() + (int) n * 4);
+				continue;
+			}
+
+			if (messages.length < n)
+				messages = new float[(int) n];
+			BinaryWriter.getFloats(in, messages, 0, (int) n);
+
+			int m = 0;
+			for (VariableNode vn : fn.getNeighbours()) {
+				for (int d : vn.getDecisionVariable().getDomain())
+					fn.setR(vn, d, messages[m++]);
+				for (int d : vn.getDecisionVariable().getDomain())
+					vn.setQ(fn, d, messages[m++]);
+			}
+			restored++;
+		}
+
+		return restored;
+	}
+
+	private static boolean contains(int[] domain, int x) {
+		for (int d : domain)
+			if (d == x)
+				return true;
+		return false;
+	}
+
+}
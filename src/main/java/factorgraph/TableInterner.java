@@ -0,0 +1,74 @@
+package factorgraph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import dcop.DecisionVariable;
+import dcop.Function;
+import function.TableFunction;
+import function.UtilityTable;
+
+/**
+ * Hash-conses the utility tables of the function nodes of a factor graph, so
+ * that functions with the same table key share one UtilityTable.
+ *
+ * @author Luca CPZ
+ */
+class TableInterner {
+
+	// tables by Function.getTableKey()
+	private Map<String, UtilityTable> tables = new HashMap<String, UtilityTable>();
+
+	/**
+	 * @param function a function
+	 * @return the table of function, shared with the functions with its table
+	 *         key, or null if function cannot be tabulated
+	 */
+	UtilityTable getTable(Function function) {
+		if (function instanceof TableFunction)
+			return ((TableFunction) function).getTable();
+
+		String key = function.getTableKey();
+		if (key == null)
+			return null;
+
+		UtilityTable table = tables.get(key);
+		if (table == null) {
+			table = tabulate(function);
+			tables.put(key, table);
+		}
+		return table;
+	}
+
+	// evaluates function on its joint assignments, in row-major order
+	private static UtilityTable tabulate(Function function) {
+		DecisionVariable[] decisionVariables = function.getDecisionVariables();
+		int[][] domains = new int[decisionVariables.length][];
+		int[] sizes = new int[decisionVariables.length];
+		for (int i = 0; i < sizes.length; i++) {
+			domains[i] = decisionVariables[i].getDomain();
+			sizes[i] = domains[i].length;
+		}
+
+		float[] utilities = new float[UtilityTable.getSize(sizes)];
+		int[] args = new int[sizes.length], digits = new int[sizes.length];
+		for (int i = 0; i < utilities.length; i++) {
+			for (int k = 0; k < args.length; k++)
+				args[k] = domains[k][digits[k]];
+			utilities[i] = function.evaluate(args);
+
+			for (int k = digits.length - 1; k >= 0 && ++digits[k] == sizes[k]; k--)
+				digits[k] = 0;
+		}
+
+		return new UtilityTable(sizes, utilities);
+	}
+
+	/**
+	 * @return the number of distinct tables created by tabulation
+	 */
+	int getNumberOfTables() {
+		return tables.size();
+	}
+
+}
@@ -1,25 +1,39 @@
 package factorgraph;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import dcop.DecisionVariable;
 import toolkit.Checker;
+import toolkit.FixedPoint;
 import toolkit.Utils;
 
 public class VariableNode {
 
-	private Integer x; // current solution x_i
-	private Float z; // current marginal function z_i (x_i)
+	// current solution x_i and marginal function z_i (x_i), read by other threads, e.g. AnytimeTracker
+	private volatile Integer x;
+	private volatile Float z;
 
 	private DecisionVariable decisionVariable;
 	private Set<FunctionNode> neighbours;
 
+	// position of this node in FactorGraph.getVariableNodes()
+	private int index;
+
 	// last produced messages from this VariableNode to neighbour FunctionNodes
 	private HashMap<FunctionNode, HashMap<Integer, Float>> Q;
 
+	// number of fractional bits of fixed-point messages, negative for float messages
+	private int fractionBits = -1;
+
+	// in fixed point, the neighbours with the position of this node in each, and scratch sums by domain index
+	private FunctionNode[] edges;
+	private int[] slots, feasible;
+	private long[] sums;
+
 	public VariableNode(DecisionVariable decisionVariable) {
 		if (Checker.assertive)
 			Checker.check(decisionVariable != null, "input DecisionVariable is null");
@@ -27,9 +41,9 @@ public class VariableNode {
 		this.decisionVariable = decisionVariable;
 		neighbours = new HashSet<FunctionNode>();
 
-		// x is randomly initialised
+		// x is randomly initialised; use setX() for a reproducible start
 		int[] domain = decisionVariable.getDomain();
-		this.x = domain[new Random().nextInt(domain.length)];
+		this.x = domain[ThreadLocalRandom.current().nextInt(domain.length)];
 
 		z = Float.NEGATIVE_INFINITY;
 		Q = new HashMap<FunctionNode, HashMap<Integer, Float>>();
@@ -64,6 +78,36 @@ public class VariableNode {
 		return this.neighbours;
 	}
 
+	public int getIndex() {
+		return index;
+	}
+
+	void setIndex(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * @param fractionBits the number of fractional bits of fixed-point messages,
+	 *                     negative for float messages
+	 */
+	void setFixedPoint(int fractionBits) {
+		this.fractionBits = fractionBits;
+		if (fractionBits < 0) {
+			edges = null;
+			slots = feasible = null;
+			sums = null;
+			return;
+		}
+
+		// the neighbours may have changed since the last call
+		edges = neighbours.toArray(new FunctionNode[neighbours.size()]);
+		slots = new int[edges.length];
+		for (int e = 0; e < edges.length; e++)
+			slots[e] = edges[e].getVarIndex(this);
+		sums = new long[decisionVariable.getDomain().length];
+		feasible = new int[sums.length];
+	}
+
 	protected boolean addNeighbour(FunctionNode node) {
 		// initialise to 0 the R messages from node to this VariableNode
 		Q.put(node, Utils.getZeroMessages(decisionVariable.getDomain()));
@@ -71,17 +115,39 @@ public class VariableNode {
 		return neighbours.add(node);
 	}
 
+	protected boolean removeNeighbour(FunctionNode node) {
+		Q.remove(node);
+		return neighbours.remove(node);
+	}
+
+	/**
+	 * @param fn a neighbour
+	 * @return the Q message to fn; in fixed point, a copy of the current message
+	 */
 	public HashMap<Integer, Float> getQ(FunctionNode fn) {
-		return Q.get(fn);
+		HashMap<Integer, Float> Qnode = Q.get(fn);
+		int[] fixed = fn.getFixedPoint() >= 0 ? fn.getFixedQ(fn.getVarIndex(this)) : null;
+		if (fixed != null) {
+			int[] domain = decisionVariable.getDomain();
+			for (int j = 0; j < domain.length; j++)
+				Qnode.put(domain[j], FixedPoint.toFloat(fixed[j], fn.getFixedPoint()));
+		}
+		return Qnode;
 	}
 
 	protected boolean setQ(FunctionNode fn, int d, float q) {
 		HashMap<Integer, Float> Qnode = Q.get(fn);
 		Qnode.put(d, q);
+		int[] fixed = fn.getFixedPoint() >= 0 ? fn.getFixedQ(fn.getVarIndex(this)) : null;
+		if (fixed != null)
+			fixed[FunctionNode.indexOf(decisionVariable.getDomain(), d)] = FixedPoint.quantise(q, fn.getFixedPoint());
 		return Q.put(fn, Qnode) != null;
 	}
 
 	public double sendQMessageTo(FunctionNode j) {
+		if (fractionBits >= 0)
+			return sendFixedPointQMessageTo(j);
+
 		int[] domain = decisionVariable.getDomain();
 		float q = 0, alpha = 0;
 
@@ -101,4 +167,66 @@ public class VariableNode {
 
 		return Q.get(j).get(x);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Same as sendQMessageTo, in fixed point: R messages are summed in a long, so
+	 * that the result does not depend on the iteration order of the neighbours,
+	 * and -infinity terms are masked out instead of branched on.
+	 */
+	private double sendFixedPointQMessageTo(FunctionNode j) {
+		int[] q = null;
+		Arrays.fill(sums, 0);
+		for (int e = 0; e < edges.length; e++) {
+			if (edges[e] == j) {
+				q = j.getFixedQ(slots[e]);
+				continue;
+			}
+			int[] r = edges[e].getFixedR(slots[e]);
+			for (int d = 0; d < sums.length; d++)
+				sums[d] += r[d] & -FixedPoint.finite(r[d]); // ignored, as in Utils.checkedSum
+		}
+
+		long alpha = 0;
+		for (int d = 0; d < sums.length; d++) {
+			sums[d] = FixedPoint.saturate(sums[d]);
+			alpha += sums[d];
+		}
+
+		alpha = Math.floorDiv(alpha, sums.length);
+
+		for (int d = 0; d < sums.length; d++)
+			q[d] = FixedPoint.saturate(sums[d] - alpha);
+
+		return FixedPoint.toFloat(q[FunctionNode.indexOf(decisionVariable.getDomain(), x)], fractionBits);
+	}
+
+	/**
+	 * Same as MaxSum.computeZX, in fixed point: the marginal of a value is
+	 * -infinity if any of its R messages is.
+	 *
+	 * @return the new marginal (z) and solution (x) of this node
+	 */
+	public Object[] computeFixedPointZX() {
+		Arrays.fill(sums, 0);
+		Arrays.fill(feasible, 1);
+		for (int e = 0; e < edges.length; e++) {
+			int[] r = edges[e].getFixedR(slots[e]);
+			for (int d = 0; d < sums.length; d++) {
+				sums[d] += r[d];
+				feasible[d] &= FixedPoint.finite(r[d]);
+			}
+		}
+
+		int newZ = FixedPoint.NEGATIVE_INFINITY, newX = -1;
+		for (int d = 0; d < sums.length; d++) {
+			int z = FixedPoint.select(feasible[d], sums[d]);
+			if (z > newZ) {
+				newZ = z;
+				newX = d;
+			}
+		}
+
+		return new Object[] { FixedPoint.toFloat(newZ, fractionBits),
+				newX >= 0 ? decisionVariable.getDomain()[newX] : null };
+	}
+}
@@ -0,0 +1,199 @@
+package function;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import dcop.DecisionVariable;
+import dcop.Function;
+import toolkit.Checker;
+import toolkit.Utils;
+
+/**
+ * A function that memoises the utilities of another one, for functions that
+ * are expensive to evaluate and have too large a joint space to be tabulated.
+ *
+ * Joint assignments are keyed by their row-major index over the domain indices
+ * of the variables. The cache holds at most a given number of entries, about
+ * 30 bytes each, in sets of WAYS slots; a key can only be stored in the set it
+ * hashes to, where a CLOCK hand evicts the first entry that has not been read
+ * since the hand last passed it. Entries are immutable and slots are read and
+ * written atomically, without locks, so that the concurrent engines can share
+ * the cache; racing insertions may lose an entry, which is only a miss later.
+ *
+ * @author Luca CPZ
+ */
+public class CachedFunction extends Function {
+
+	/** Number of slots of each set */
+	public static final int WAYS = 8;
+
+	private static class Entry {
+
+		final long key;
+		final float utility;
+
+		Entry(long key, float utility) {
+			this.key = key;
+			this.utility = utility;
+		}
+	}
+
+	private final Function function;
+
+	// row-major stride, first value and whether the values are consecutive, of each domain
+	private final long[] strides;
+	private final int[] offsets;
+	private final boolean[] consecutive;
+
+	private final AtomicReferenceArray<Entry> slots;
+	private final int setMask;
+
+	// whether each slot has been read since the CLOCK hand of its set passed it, and the hands;
+	// races on these only make eviction less accurate
+	private final boolean[] referenced;
+	private final int[] hands;
+
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+	/**
+	 * @param function   the function to memoise
+	 * @param maxEntries the maximum number of cached utilities, rounded up to a
+	 *                   power of 2 of at least WAYS, up to 2^30
+	 */
+	public CachedFunction(Function function, int maxEntries) {
+		super(function.getDecisionVariables(), function.toString());
+
+		if (Checker.assertive)
+			Checker.check(maxEntries > 0, "maximum number of entries is not positive");
+
+		this.function = function;
+
+		strides = new long[decisionVariables.length];
+		offsets = new int[strides.length];
+		consecutive = new boolean[strides.length];
+		long stride = 1;
+		for (int i = strides.length - 1; i >= 0; i--) {
+			int[] domain = decisionVariables[i].getDomain();
+			strides[i] = stride;
+			stride = Math.multiplyExact(stride, domain.length);
+			offsets[i] = domain[0];
+			consecutive[i] = true;
+			for (int j = 1; j < domain.length && consecutive[i]; j++)
+				consecutive[i] = domain[j] == domain[0] + j;
+		}
+
+		int nbrSets = Integer.highestOneBit(Math.min(Math.max(maxEntries, WAYS), 1 << 30) - 1) * 2 / WAYS;
+		slots = new AtomicReferenceArray<Entry>(nbrSets * WAYS);
+		setMask = nbrSets - 1;
+		referenced = new boolean[nbrSets * WAYS];
+		hands = new int[nbrSets];
+	}
+
+	public Function getFunction() {
+		return function;
+	}
+
+	// the row-major index of values, -1 if a value is not in its domain
+	private long getKey(int[] values) {
+		long key = 0;
+		for (int i = 0; i < values.length; i++) {
+			int[] domain = decisionVariables[i].getDomain();
+			int idx = -1;
+			if (consecutive[i]) {
+				idx = values[i] - offsets[i];
+				if (idx >= domain.length)
+					idx = -1;
+			} else
+				for (int j = 0; j < domain.length && idx < 0; j++)
+					if (domain[j] == values[i])
+						idx = j;
+			if (idx < 0)
+				return -1;
+			key += idx * strides[i];
+		}
+		return key;
+	}
+
+	private int getSet(long key) {
+		key *= 0x9e3779b97f4a7c15L; // Fibonacci hashing
+		return (int) (key ^ (key >>> 32)) & setMask;
+	}
+
+	@Override
+	public float evaluate(int[] values) {
+		long key = getKey(values);
+		if (key < 0)
+			return function.evaluate(values);
+
+		int first = getSet(key) * WAYS;
+		for (int s = first; s < first + WAYS; s++) {
+			Entry e = slots.get(s);
+			if (e != null && e.key == key) {
+				referenced[s] = true;
+				hits.increment();
+				return e.utility;
+			}
+		}
+
+		misses.increment();
+		float utility = function.evaluate(values);
+		insert(first, new Entry(key, utility));
+		return utility;
+	}
+
+	// CLOCK eviction within the set starting at slot first
+	private void insert(int first, Entry entry) {
+		int set = first / WAYS, hand = hands[set];
+		for (int n = 0; n < 2 * WAYS; n++) {
+			int s = first + hand;
+			hand = (hand + 1) % WAYS;
+			if (slots.get(s) != null && referenced[s]) {
+				referenced[s] = false;
+				continue;
+			}
+
+			if (slots.getAndSet(s, entry) != null)
+				evictions.increment();
+			break;
+		}
+		hands[set] = hand;
+	}
+
+	@Override
+	public float evaluate(Number[] d) {
+		return evaluate(Utils.toIntArray(d));
+	}
+
+	/**
+	 * A memoised function is tabulated like the function it memoises, if that
+	 * can be.
+	 */
+	@Override
+	public String getTableKey() {
+		return function.getTableKey();
+	}
+
+	/** @return the maximum number of cached utilities */
+	public int getCapacity() {
+		return slots.length();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/** @return the fraction of evaluations answered by the cache */
+	public double getHitRate() {
+		long h = getHits(), m = getMisses();
+		return h + m > 0 ? h / (double) (h + m) : 0;
+	}
+
+}
@@ -0,0 +1,20 @@
+package function;
+
+/**
+ * An integer expression over the values of the variables of a function, where
+ * booleans are 1 (true) and 0 (false).
+ *
+ * @author Luca CPZ
+ */
+@FunctionalInterface
+public interface Expression {
+
+	/**
+	 * @param values the value of each variable of the function
+	 * @return the value of this expression
+	 * @throws ArithmeticException if the expression is undefined for values, e.g.
+	 *                             on a division by zero
+	 */
+	int evaluate(int[] values);
+
+}
@@ -0,0 +1,91 @@
+package function;
+
+import dcop.DecisionVariable;
+import dcop.Function;
+import toolkit.Checker;
+import toolkit.Utils;
+
+/**
+ * A function defined intensionally by an Expression.
+ *
+ * A hard function is a predicate, whose utility is 0 when it holds and negative
+ * infinity otherwise; the utility of a soft function is the value of its
+ * expression. Assignments where the expression is undefined, e.g. because of a
+ * division by zero, are infeasible: their utility is negative infinity.
+ *
+ * @author Luca CPZ
+ */
+public class ExpressionFunction extends Function {
+
+	private Expression expression;
+	private boolean hard;
+
+	/**
+	 * @param decisionVariables array of decision variables that are arguments of
+	 *                          this function
+	 * @param id                the function string identifier
+	 * @param expression        an expression over the values of
+	 *                          decisionVariables
+	 * @param hard              whether expression is a predicate
+	 */
+	public ExpressionFunction(DecisionVariable[] decisionVariables, String id, Expression expression, boolean hard) {
+		super(decisionVariables, id);
+
+		if (Checker.assertive)
+			Checker.check(expression != null, "input expression is null");
+
+		this.expression = expression;
+		this.hard = hard;
+	}
+
+	@Override
+	public float evaluate(int[] values) {
+		int value;
+		try {
+			value = expression.evaluate(values);
+		} catch (ArithmeticException e) {
+			return Float.NEGATIVE_INFINITY;
+		}
+		return hard ? (value != 0 ? 0 : Float.NEGATIVE_INFINITY) : value;
+	}
+
+	@Override
+	public float evaluate(Number[] d) {
+		return evaluate(Utils.toIntArray(d));
+	}
+
+	/**
+	 * Evaluates this function on its whole joint space.
+	 *
+	 * @return the utilities indexed by the domain indices of the decision
+	 *         variables, in row-major order
+	 */
+	public UtilityTable tabulate() {
+		int[] sizes = new int[decisionVariables.length];
+		for (int i = 0; i < sizes.length; i++)
+			sizes[i] = decisionVariables[i].getDomain().length;
+
+		float[] utilities = new float[UtilityTable.getSize(sizes)];
+		int[] indices = new int[sizes.length];
+		int[] values = new int[sizes.length];
+		for (int i = 0; i < values.length; i++)
+			values[i] = decisionVariables[i].getDomain()[0];
+
+		for (int index = 0; index < utilities.length; index++) {
+			utilities[index] = evaluate(values);
+
+			// next combination, the last variable changing fastest
+			for (int i = sizes.length - 1; i >= 0; i--) {
+				if (++indices[i] < sizes[i]) {
+					values[i] = decisionVariables[i].getDomain()[indices[i]];
+					break;
+				}
+				indices[i] = 0;
+				values[i] = decisionVariables[i].getDomain()[0];
+			}
+		}
+
+		return new UtilityTable(sizes, utilities);
+	}
+
+}
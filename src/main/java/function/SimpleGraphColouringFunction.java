@@ -1,18 +1,29 @@
 package function;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import dcop.DecisionVariable;
 import dcop.Function;
 import toolkit.Checker;
+import toolkit.Utils;
 
 public class SimpleGraphColouringFunction extends Function {
 
+	// smallest value of the domains, if all values fit in a 64-bit mask from it
+	private int minValue;
+	private boolean masked;
+
 	public SimpleGraphColouringFunction(DecisionVariable[] decisionVariables, String id) {
 		super(decisionVariables, id);
 		if (Checker.assertive)
 			Checker.check(decisionVariables.length > 0, "decision variables array is null");
+
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+		for (DecisionVariable x : decisionVariables)
+			for (int d : x.getDomain()) {
+				min = Math.min(min, d);
+				max = Math.max(max, d);
+			}
+		minValue = (int) min;
+		masked = max - min < Long.SIZE;
 	}
 
 	/**
@@ -21,17 +32,37 @@ public class SimpleGraphColouringFunction extends Function {
 	 * infinity otherwise.
 	 */
 	@Override
-	public float evaluate(Number[] d) {
-		// BitSet is more efficient with positive domains
-		Set<Number> foundNumbers = new HashSet<Number>();
-
-		for (Number num : d) {
-			if (foundNumbers.contains(num))
-				return Float.NEGATIVE_INFINITY;
-			foundNumbers.add(num);
+	public float evaluate(int[] values) {
+		if (masked) {
+			long found = 0;
+			for (int v : values) {
+				long bit = 1L << (v - minValue);
+				if ((found & bit) != 0)
+					return Float.NEGATIVE_INFINITY;
+				found |= bit;
+			}
+			return 1;
 		}
 
+		for (int i = 1; i < values.length; i++)
+			for (int j = 0; j < i; j++)
+				if (values[i] == values[j])
+					return Float.NEGATIVE_INFINITY;
 		return 1;
 	}
 
+	@Override
+	public float evaluate(Number[] d) {
+		return evaluate(Utils.toIntArray(d));
+	}
+
+	/**
+	 * The utility only depends on the arguments, so functions with the same
+	 * domains share their table.
+	 */
+	@Override
+	public String getTableKey() {
+		return isTabulable() ? getDomainsKey() : null;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,298 @@
+package function;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import toolkit.Checker;
+import toolkit.Utils;
+
+/**
+ * A sparse table of utilities, which lists the utility of some joint
+ * assignments of the domain indices of some variables and gives a default
+ * utility to all the others.
+ *
+ * Listed assignments are identified by their row-major index, as in
+ * UtilityTable, which is a long so that the joint space can exceed the size of
+ * an array. Tables are read-only, so that they can be shared.
+ *
+ * @author Luca CPZ
+ */
+public class SparseTable {
+
+	// domain size of each variable, and row-major stride of each variable
+	private final int[] sizes;
+	private final long[] strides;
+
+	// listed assignments: sorted row-major indices, domain indices and utilities
+	private final long[] keys;
+	private final int[] indices;
+	private final float[] utilities;
+
+	private final float defaultUtility;
+
+	/**
+	 * @param sizes          domain size of each variable
+	 * @param indices        domain indices of the listed assignments, stored
+	 *                       contiguously; if an assignment is listed more than
+	 *                       once, the last utility is kept
+	 * @param utilities      utility of each listed assignment
+	 * @param defaultUtility utility of the assignments that are not listed
+	 */
+	public SparseTable(int[] sizes, int[] indices, float[] utilities, float defaultUtility) {
+		if (Checker.assertive) {
+			Checker.check(sizes.length > 0, "sizes array is null");
+			Checker.check(indices.length == utilities.length * sizes.length, "indices array has wrong length");
+		}
+
+		this.sizes = sizes;
+		this.defaultUtility = defaultUtility;
+		strides = new long[sizes.length];
+		long stride = 1;
+		for (int i = sizes.length - 1; i >= 0; i--) {
+			strides[i] = stride;
+			stride = Math.multiplyExact(stride, sizes[i]);
+		}
+
+		// sort the listed assignments by index, stably so that the last duplicate wins
+		long[] unsorted = new long[utilities.length];
+		for (int t = 0; t < unsorted.length; t++)
+			unsorted[t] = getIndex(indices, t * sizes.length);
+		int[] order = IntStream.range(0, unsorted.length).boxed()
+				.sorted((a, b) -> Long.compare(unsorted[a], unsorted[b])).mapToInt(Integer::intValue).toArray();
+
+		int n = 0;
+		for (int t = 0; t < order.length; t++)
+			if (t + 1 == order.length || unsorted[order[t + 1]] != unsorted[order[t]])
+				order[n++] = order[t];
+
+		keys = new long[n];
+		this.indices = new int[n * sizes.length];
+		this.utilities = new float[n];
+		for (int t = 0; t < n; t++) {
+			keys[t] = unsorted[order[t]];
+			System.arraycopy(indices, order[t] * sizes.length, this.indices, t * sizes.length, sizes.length);
+			this.utilities[t] = utilities[order[t]];
+		}
+	}
+
+	private long getIndex(int[] domainIndices, int offset) {
+		long index = 0;
+		for (int i = 0; i < sizes.length; i++)
+			index += domainIndices[offset + i] * strides[i];
+		return index;
+	}
+
+	public int[] getSizes() {
+		return sizes;
+	}
+
+	public int getArity() {
+		return sizes.length;
+	}
+
+	/**
+	 * @return the number of listed assignments
+	 */
+	public int getNbrTuples() {
+		return keys.length;
+	}
+
+	public float getDefaultUtility() {
+		return defaultUtility;
+	}
+
+	/**
+	 * @param domainIndices the domain index of each variable
+	 * @return the utility of the joint assignment
+	 */
+	public float get(int[] domainIndices) {
+		return get(getIndex(domainIndices, 0));
+	}
+
+	/**
+	 * @param index the row-major index of a joint assignment
+	 * @return the utility of the joint assignment
+	 */
+	public float get(long index) {
+		int t = Arrays.binarySearch(keys, index);
+		return t >= 0 ? utilities[t] : defaultUtility;
+	}
+
+	/**
+	 * The scratch buffers of maximise, reused so that it does not allocate. The
+	 * table can be shared, but a workspace is used by one thread at a time.
+	 */
+	public static class Workspace {
+
+		// domain indices of each variable by decreasing message
+		private final int[][] byRank;
+
+		/*
+		 * Joint assignments of the variables other than the target, by rank of their
+		 * messages: ranks[c * arity + k] is the rank of the k-th variable in the c-th
+		 * candidate, sums[c] the sum of its messages, and only ranks from lasts[c] on
+		 * are incremented, so that no candidate is generated twice.
+		 */
+		private int[] ranks, lasts;
+		private float[] sums;
+
+		// max-heap of candidates by sum, ordered as a PriorityQueue would be
+		private int[] heap;
+		private int candidates, size;
+
+		private Workspace(int[] sizes) {
+			byRank = new int[sizes.length][];
+			for (int k = 0; k < sizes.length; k++)
+				byRank[k] = new int[sizes[k]];
+			ranks = new int[sizes.length];
+			lasts = new int[1];
+			sums = new float[1];
+			heap = new int[1];
+		}
+
+		private void clear() {
+			candidates = size = 0;
+		}
+
+		// adds the candidate parent with its k-th rank incremented, or the first candidate if parent is negative
+		private void offer(int parent, int k, float sum, int last) {
+			int arity = byRank.length, c = candidates++;
+			if (c == sums.length) {
+				ranks = Arrays.copyOf(ranks, 2 * c * arity);
+				lasts = Arrays.copyOf(lasts, 2 * c);
+				sums = Arrays.copyOf(sums, 2 * c);
+				heap = Arrays.copyOf(heap, 2 * c);
+			}
+
+			if (parent < 0)
+				Arrays.fill(ranks, c * arity, (c + 1) * arity, 0);
+			else {
+				System.arraycopy(ranks, parent * arity, ranks, c * arity, arity);
+				ranks[c * arity + k]++;
+			}
+			sums[c] = sum;
+			lasts[c] = last;
+
+			int i = size++;
+			while (i > 0) {
+				int p = (i - 1) >>> 1;
+				if (Float.compare(sums[heap[p]], sum) >= 0)
+					break;
+				heap[i] = heap[p];
+				i = p;
+			}
+			heap[i] = c;
+		}
+
+		// removes the candidate with the largest sum
+		private int poll() {
+			int result = heap[0], n = --size;
+			if (n > 0) {
+				int c = heap[n], i = 0;
+				while (i < n >>> 1) {
+					int child = (i << 1) + 1, right = child + 1;
+					if (right < n && Float.compare(sums[heap[right]], sums[heap[child]]) > 0)
+						child = right;
+					if (Float.compare(sums[heap[child]], sums[c]) <= 0)
+						break;
+					heap[i] = heap[child];
+					i = child;
+				}
+				heap[i] = c;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * @return a new workspace for maximise
+	 */
+	public Workspace newWorkspace() {
+		return new Workspace(sizes);
+	}
+
+	/**
+	 * Computes, for each value of the target variable, the maximum over the joint
+	 * assignments with that value of their utility plus the messages of the other
+	 * variables, added in order with Utils.checkedSum as in FunctionNode.
+	 *
+	 * Listed assignments are visited once. The best assignment that is not listed
+	 * is found for each target value by enumerating the assignments of the other
+	 * variables in decreasing order of the sum of their messages, which stops
+	 * after skipping at most the listed assignments with that target value.
+	 *
+	 * @param target    the position of the variable receiving the message
+	 * @param q         q[k][j] is the message of the k-th variable for its j-th
+	 *                  domain value; q[target] is ignored
+	 * @param out       receives the maximum for each domain index of the target in
+	 *                  its first elements
+	 * @param workspace the scratch buffers, from newWorkspace()
+	 */
+	public void maximise(int target, float[][] q, float[] out, Workspace workspace) {
+		int arity = sizes.length;
+		Arrays.fill(out, 0, sizes[target], Float.NEGATIVE_INFINITY);
+
+		// listed assignments
+		for (int t = 0, offset = 0; t < keys.length; t++, offset += arity) {
+			float sigma = utilities[t];
+			for (int k = 0; k < arity; k++)
+				if (k != target)
+					sigma = Utils.checkedSum(sigma, q[k][indices[offset + k]]);
+			int v = indices[offset + target];
+			out[v] = Math.max(sigma, out[v]);
+		}
+
+		// the domain indices of the other variables by decreasing message
+		int[][] byRank = workspace.byRank;
+		float top = 0;
+		for (int k = 0; k < arity; k++)
+			if (k != target) {
+				sort(q[k], byRank[k]);
+				top += q[k][byRank[k][0]];
+			}
+
+		// best assignment that is not listed, for each target value
+		for (int v = 0; v < sizes[target]; v++) {
+			workspace.clear();
+			workspace.offer(-1, 0, top, 0);
+
+			while (workspace.size > 0) {
+				int c = workspace.poll(), offset = c * arity;
+
+				long key = v * strides[target];
+				for (int k = 0; k < arity; k++)
+					if (k != target)
+						key += byRank[k][workspace.ranks[offset + k]] * strides[k];
+
+				if (Arrays.binarySearch(keys, key) < 0) {
+					float sigma = defaultUtility;
+					for (int k = 0; k < arity; k++)
+						if (k != target)
+							sigma = Utils.checkedSum(sigma, q[k][byRank[k][workspace.ranks[offset + k]]]);
+					out[v] = Math.max(sigma, out[v]);
+					break;
+				}
+
+				for (int k = workspace.lasts[c]; k < arity; k++)
+					if (k != target && workspace.ranks[offset + k] + 1 < sizes[k]) {
+						float sum = 0; // recomputed, as subtracting infinite messages gives NaN
+						for (int l = 0; l < arity; l++)
+							if (l != target)
+								sum += q[l][byRank[l][workspace.ranks[offset + l] + (l == k ? 1 : 0)]];
+						workspace.offer(c, k, sum, k);
+					}
+			}
+		}
+	}
+
+	// sorts the domain indices by decreasing message, stably
+	private static void sort(float[] q, int[] byRank) {
+		for (int j = 0; j < byRank.length; j++) {
+			int i = j;
+			for (; i > 0 && Float.compare(q[byRank[i - 1]], q[j]) < 0; i--)
+				byRank[i] = byRank[i - 1];
+			byRank[i] = j;
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package function;
+
+import dcop.DecisionVariable;
+import dcop.Function;
+import toolkit.Checker;
+import toolkit.Utils;
+
+/**
+ * A function defined extensionally by a SparseTable.
+ *
+ * @author Luca CPZ
+ */
+public class SparseTableFunction extends Function {
+
+	private SparseTable table;
+
+	/**
+	 * @param decisionVariables array of decision variables that are arguments of
+	 *                          this function
+	 * @param id                the function string identifier
+	 * @param table             utilities indexed by the domain indices of
+	 *                          decisionVariables
+	 */
+	public SparseTableFunction(DecisionVariable[] decisionVariables, String id, SparseTable table) {
+		super(decisionVariables, id);
+
+		if (Checker.assertive) {
+			Checker.check(table.getArity() == decisionVariables.length, "table arity is not valid");
+			for (int i = 0; i < decisionVariables.length; i++)
+				Checker.check(table.getSizes()[i] == decisionVariables[i].getDomain().length,
+						"table size of variable " + decisionVariables[i] + " is not valid");
+		}
+
+		this.table = table;
+	}
+
+	public SparseTable getTable() {
+		return table;
+	}
+
+	@Override
+	public float evaluate(int[] values) {
+		long index = 0;
+
+		for (int i = 0; i < values.length; i++) {
+			int[] domain = decisionVariables[i].getDomain();
+			int j = 0;
+			while (j < domain.length && domain[j] != values[i])
+				j++;
+			if (j == domain.length)
+				return Float.NEGATIVE_INFINITY;
+			index = index * domain.length + j;
+		}
+
+		return table.get(index);
+	}
+
+	@Override
+	public float evaluate(Number[] d) {
+		return evaluate(Utils.toIntArray(d));
+	}
+
+}
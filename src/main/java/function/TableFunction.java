@@ -0,0 +1,92 @@
+package function;
+
+import dcop.DecisionVariable;
+import dcop.Function;
+import toolkit.Checker;
+import toolkit.Utils;
+
+/**
+ * A function defined extensionally by a UtilityTable.
+ *
+ * @author Luca CPZ
+ */
+public class TableFunction extends Function {
+
+	private UtilityTable table;
+
+	// first value of each domain, and whether its values are consecutive
+	private int[] offsets;
+	private boolean[] consecutive;
+
+	/**
+	 * @param decisionVariables array of decision variables that are arguments of
+	 *                          this function
+	 * @param id                the function string identifier
+	 * @param table             utilities indexed by the domain indices of
+	 *                          decisionVariables
+	 */
+	public TableFunction(DecisionVariable[] decisionVariables, String id, UtilityTable table) {
+		super(decisionVariables, id);
+
+		if (Checker.assertive) {
+			Checker.check(table.getArity() == decisionVariables.length, "table arity is not valid");
+			for (int i = 0; i < decisionVariables.length; i++)
+				Checker.check(table.getSizes()[i] == decisionVariables[i].getDomain().length,
+						"table size of variable " + decisionVariables[i] + " is not valid");
+		}
+
+		this.table = table;
+		offsets = new int[decisionVariables.length];
+		consecutive = new boolean[offsets.length];
+		for (int i = 0; i < offsets.length; i++) {
+			int[] domain = decisionVariables[i].getDomain();
+			offsets[i] = domain[0];
+			consecutive[i] = true;
+			for (int j = 1; j < domain.length && consecutive[i]; j++)
+				consecutive[i] = domain[j] == domain[0] + j;
+		}
+	}
+
+	public UtilityTable getTable() {
+		return table;
+	}
+
+	/**
+	 * @param i     the index of a decision variable of this function
+	 * @param value a value
+	 * @return the index of value in the domain of the i-th variable, -1 if absent
+	 */
+	public int getDomainIndex(int i, int value) {
+		int[] domain = decisionVariables[i].getDomain();
+
+		if (consecutive[i]) {
+			int idx = value - offsets[i];
+			return idx >= 0 && idx < domain.length ? idx : -1;
+		}
+
+		for (int j = 0; j < domain.length; j++)
+			if (domain[j] == value)
+				return j;
+		return -1;
+	}
+
+	@Override
+	public float evaluate(int[] values) {
+		int index = 0, idx;
+		int[] sizes = table.getSizes();
+
+		for (int i = 0; i < values.length; i++) {
+			if ((idx = getDomainIndex(i, values[i])) < 0)
+				return Float.NEGATIVE_INFINITY;
+			index = index * sizes[i] + idx;
+		}
+
+		return table.get(index);
+	}
+
+	@Override
+	public float evaluate(Number[] d) {
+		return evaluate(Utils.toIntArray(d));
+	}
+
+}
@@ -0,0 +1,133 @@
+package function;
+
+import java.nio.FloatBuffer;
+
+import toolkit.Checker;
+import toolkit.FixedPoint;
+
+/**
+ * A dense table of utilities, indexed by the joint assignments of the domain
+ * indices of some variables.
+ *
+ * Joint assignments are stored in row-major order, i.e. the last variable
+ * varies fastest, as in Mathematics.computeCombinations. Tables are read-only,
+ * so that they can be shared by functions defined by the same relation, and
+ * may be backed by a memory-mapped file.
+ *
+ * @author Luca CPZ
+ */
+public class UtilityTable {
+
+	// domain size of each variable
+	private final int[] sizes;
+
+	private final FloatBuffer utilities;
+
+	private static class Quantised {
+
+		final int fractionBits;
+		final int[] utilities;
+
+		Quantised(int fractionBits, int[] utilities) {
+			this.fractionBits = fractionBits;
+			this.utilities = utilities;
+		}
+	}
+
+	// the utilities in fixed point, computed on demand for the last number of fractional bits
+	private volatile Quantised quantised;
+
+	/**
+	 * @param sizes     domain size of each variable
+	 * @param utilities utility of each joint assignment, in row-major order
+	 */
+	public UtilityTable(int[] sizes, float[] utilities) {
+		this(sizes, FloatBuffer.wrap(utilities));
+	}
+
+	/**
+	 * @param sizes     domain size of each variable
+	 * @param utilities utility of each joint assignment, in row-major order, from
+	 *                  index 0 to capacity
+	 */
+	public UtilityTable(int[] sizes, FloatBuffer utilities) {
+		if (Checker.assertive) {
+			Checker.check(sizes.length > 0, "sizes array is null");
+			Checker.check(utilities.capacity() == getSize(sizes), "utilities buffer has wrong capacity");
+		}
+
+		this.sizes = sizes;
+		this.utilities = utilities;
+	}
+
+	/**
+	 * @param sizes domain size of each variable
+	 * @return the number of joint assignments
+	 */
+	public static int getSize(int[] sizes) {
+		long size = 1;
+		for (int s : sizes)
+			size *= s;
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("joint space of " + size + " assignments is too large");
+		return (int) size;
+	}
+
+	public int[] getSizes() {
+		return sizes;
+	}
+
+	public int getArity() {
+		return sizes.length;
+	}
+
+	/**
+	 * @return the number of joint assignments
+	 */
+	public int size() {
+		return utilities.capacity();
+	}
+
+	/**
+	 * @param index the row-major index of a joint assignment
+	 * @return the utility of the joint assignment
+	 */
+	public float get(int index) {
+		return utilities.get(index);
+	}
+
+	/**
+	 * @param fractionBits the number of fractional bits
+	 * @return the utilities in fixed point, in row-major order; the array is
+	 *         shared and must not be modified
+	 */
+	public int[] getFixedPoint(int fractionBits) {
+		Quantised q = quantised;
+		if (q == null || q.fractionBits != fractionBits) {
+			int[] fixed = new int[size()];
+			for (int i = 0; i < fixed.length; i++)
+				fixed[i] = FixedPoint.quantise(utilities.get(i), fractionBits);
+			quantised = q = new Quantised(fractionBits, fixed);
+		}
+		return q.utilities;
+	}
+
+	/**
+	 * @return a read-only view of the utilities
+	 */
+	public FloatBuffer getUtilities() {
+		return utilities.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @param domainIndices the domain index of each variable
+	 * @return the row-major index of the joint assignment
+	 */
+	public int getIndex(int[] domainIndices) {
+		int index = 0;
+		for (int i = 0; i < sizes.length; i++)
+			index = index * sizes[i] + domainIndices[i];
+		return index;
+	}
+
+}
@@ -1,20 +1,25 @@
 package function;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 
 import dcop.DecisionVariable;
 import dcop.Function;
 import toolkit.Checker;
+import toolkit.Utils;
 
 public class WeightedGraphColouringFunction extends Function {
 
 	// index of the decisionVariable belonging to the agent that holds this function
 	private int agentVariableIdx;
 
-	// associated agent's preferences of each domain value of its decision variable
-	private Map<Integer, Float> agentPreferences;
+	// associated agent's preferences of each domain value of its decision variable, by domain index
+	private float[] agentPreferences;
+
+	// first value of the agent's domain, and whether its values are consecutive
+	private int offset;
+	private boolean consecutive;
 
 	/**
 	 * Every such function is associated to exactly 1 agent, which is identified by
@@ -27,22 +32,64 @@ public class WeightedGraphColouringFunction extends Function {
 	 *                          associated with this function
 	 */
 	public WeightedGraphColouringFunction(DecisionVariable[] decisionVariables, String id, int i) {
+		this(decisionVariables, id, i, (float[]) null);
+	}
+
+	/**
+	 * @param decisionVariables array of decision variables that are arguments of
+	 *                          this function
+	 * @param id                the function string identifier
+	 * @param i                 the index of the decision variable of the agent
+	 *                          associated with this function
+	 * @param m                 the agent's preference of each value of its
+	 *                          decision variable; if null, preferences are
+	 *                          initialised randomly
+	 */
+	public WeightedGraphColouringFunction(DecisionVariable[] decisionVariables, String id, int i,
+			Map<Integer, Float> m) {
+		this(decisionVariables, id, i, m == null ? null : toArray(decisionVariables[i].getDomain(), m));
+	}
+
+	/**
+	 * @param decisionVariables array of decision variables that are arguments of
+	 *                          this function
+	 * @param id                the function string identifier
+	 * @param i                 the index of the decision variable of the agent
+	 *                          associated with this function
+	 * @param preferences       the agent's preference of each value of its
+	 *                          decision variable, by domain index; if null,
+	 *                          preferences are initialised randomly
+	 */
+	public WeightedGraphColouringFunction(DecisionVariable[] decisionVariables, String id, int i,
+			float[] preferences) {
 		super(decisionVariables, id);
 
 		if (Checker.assertive) {
 			Checker.check(decisionVariables.length > 0, "decision variables array is null");
 			Checker.check(i >= 0, "agent's variable index is negative");
 			Checker.check(i < decisionVariables.length, "agent's variable index is out of bounds");
+			Checker.check(preferences == null || preferences.length == decisionVariables[i].getDomain().length,
+					"preferences array has wrong length");
 		}
 
 		agentVariableIdx = i;
-		initPreferences();
+		if (preferences == null)
+			initPreferences();
+		else
+			agentPreferences = preferences;
+
+		int[] domain = decisionVariables[i].getDomain();
+		offset = domain[0];
+		consecutive = true;
+		for (int j = 1; j < domain.length && consecutive; j++)
+			consecutive = domain[j] == domain[0] + j;
 	}
 
-	public WeightedGraphColouringFunction(DecisionVariable[] decisionVariables, String id, int i,
-			Map<Integer, Float> m) {
-		this(decisionVariables, id, i);
-		agentPreferences = m;
+	private static float[] toArray(int[] domain, Map<Integer, Float> m) {
+		float[] preferences = new float[domain.length];
+		for (int j = 0; j < domain.length; j++)
+			preferences[j] = m.get(domain[j]);
+		return preferences;
 	}
 
 	/**
@@ -51,31 +98,67 @@ public class WeightedGraphColouringFunction extends Function {
 	private void initPreferences() {
 		int[] domain = decisionVariables[agentVariableIdx].getDomain();
 
-		agentPreferences = new HashMap<Integer, Float>();
+		agentPreferences = new float[domain.length];
 
 		for (int i = 0; i < domain.length; i++)
-			agentPreferences.put(domain[i], ThreadLocalRandom.current().nextFloat() * 1e-6f);
+			agentPreferences[i] = ThreadLocalRandom.current().nextFloat() * 1e-6f;
+	}
+
+	// the index of value in the agent's domain, -1 if absent
+	private int getDomainIndex(int value) {
+		int[] domain = decisionVariables[agentVariableIdx].getDomain();
+
+		if (consecutive) {
+			int idx = value - offset;
+			return idx >= 0 && idx < domain.length ? idx : -1;
+		}
+
+		for (int j = 0; j < domain.length; j++)
+			if (domain[j] == value)
+				return j;
+		return -1;
 	}
 
 	/**
 	 * Equation 18 in 'Decentralised Coordination of Low-Power Embedded Devices
 	 * Using the Max-Sum Algorithm', Farinelli et al., AAMAS 2008.
+	 *
+	 * The utility only depends on the arguments, x_m included, so that it can be
+	 * tabulated.
 	 */
 	@Override
-	public float evaluate(Number[] d) {
-		// this agent's preference on its current variable value x_m
-		int x_m = decisionVariables[agentVariableIdx].getVariableNode().getX();
-		float u = agentPreferences.get(x_m);
+	public float evaluate(int[] values) {
+		// this agent's preference on its variable value x_m
+		int x_m = values[agentVariableIdx];
+		int idx = getDomainIndex(x_m);
+		if (idx < 0)
+			return Float.NEGATIVE_INFINITY;
+		float u = agentPreferences[idx];
 
 		/*
 		 * the sum of all x_m OP x_i, where x_i is any other variable in this function,
 		 * and x_m OP x_i = 1 if x_m = x_i, 0 otherwise
 		 */
-		for (int i = 0; i < d.length; i++)
-			if (i != agentVariableIdx && d[i].intValue() == x_m)
-				u -= d[i].intValue();
+		for (int i = 0; i < values.length; i++)
+			if (i != agentVariableIdx && values[i] == x_m)
+				u -= values[i];
 
 		return u;
 	}
 
-}
\ No newline at end of file
+	@Override
+	public float evaluate(Number[] d) {
+		return evaluate(Utils.toIntArray(d));
+	}
+
+	/**
+	 * Functions with the same domains, agent's variable index and preferences
+	 * share their table. Preferences usually differ between agents, so the
+	 * functions of agents with many neighbours are not tabulated.
+	 */
+	@Override
+	public String getTableKey() {
+		return isTabulable() ? getDomainsKey() + agentVariableIdx + Arrays.toString(agentPreferences) : null;
+	}
+
+}
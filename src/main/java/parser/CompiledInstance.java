@@ -0,0 +1,258 @@
+package parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import dcop.Agent;
+import dcop.DecisionVariable;
+import dcop.Function;
+import factorgraph.FactorGraph;
+import factorgraph.VariableNode;
+import function.TableFunction;
+import function.UtilityTable;
+import toolkit.BinaryWriter;
+
+/**
+ * A binary, memory-mappable representation of a factor graph whose functions
+ * are all TableFunctions, used to skip XCSP parsing on later loads.
+ *
+ * The file holds, in little-endian order: a header with the SHA-256 hash of the
+ * source file; the agents with the indices of their variables; the variables
+ * with their domains; the utility tables; the functions with their table and
+ * variable indices. Strings and tables are 4-byte aligned, and loaded tables
+ * are views of the mapped file, not copies. Files must be smaller than 2 GB, and
+ * are replaced atomically.
+ *
+ * @author Luca CPZ
+ */
+public class CompiledInstance {
+
+	private static final int MAGIC = 0x4a4d5347; // "JMSG"
+	private static final int VERSION = 1;
+	private static final int HASH_LENGTH = 32;
+
+	/**
+	 * Loads the factor graph of an XCSP file from a cache file, which is
+	 * (re)written when it is missing, corrupt or was compiled from a different
+	 * source. Graphs with functions that are not TableFunctions, such as sparse or
+	 * intensional ones, are never cached, and are parsed on every load.
+	 *
+	 * @param xmlPath   the path of the XCSP file
+	 * @param cacheFile the path of the compiled instance
+	 * @return the factor graph of the problem
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static FactorGraph load(String xmlPath, Path cacheFile) throws IOException {
+		byte[] hash = hash(Path.of(xmlPath));
+
+		if (Files.exists(cacheFile))
+			try {
+				if (Arrays.equals(hash, readHash(cacheFile)))
+					return read(cacheFile);
+			} catch (IOException e) {
+				// a corrupt or unreadable cache is a miss, and is rewritten below
+			}
+
+		FactorGraph graph = FactorGraphBuilder.build(xmlPath);
+		for (Function f : graph.getFunctions())
+			if (!(f instanceof TableFunction)) // e.g. a large intensional constraint
+				return graph;
+		write(graph, hash, cacheFile);
+		return graph;
+	}
+
+	/**
+	 * @param file a file
+	 * @return the SHA-256 hash of the content of file
+	 * @throws IOException if file cannot be read
+	 */
+	public static byte[] hash(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[1 << 16];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				md.update(buffer, 0, n);
+			return md.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every Java platform provides SHA-256
+		}
+	}
+
+	/**
+	 * @param file a compiled instance
+	 * @return the hash of its source, or null if file is not a compiled instance
+	 * @throws IOException if file cannot be read
+	 */
+	public static byte[] readHash(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(8 + HASH_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) > 0)
+				;
+			header.flip();
+			if (header.remaining() < header.capacity() || header.getInt() != MAGIC || header.getInt() != VERSION)
+				return null;
+			byte[] hash = new byte[HASH_LENGTH];
+			header.get(hash);
+			return hash;
+		}
+	}
+
+	/**
+	 * Writes a factor graph, whose functions must all be TableFunctions, replacing
+	 * file atomically.
+	 *
+	 * @param graph      the factor graph
+	 * @param sourceHash the hash of the source of graph
+	 * @param file       the output file
+	 * @throws IOException if file cannot be written
+	 */
+	public static void write(FactorGraph graph, byte[] sourceHash, Path file) throws IOException {
+		Agent[] agents = graph.getAgents();
+		VariableNode[] vns = graph.getVariableNodes();
+		Function[] functions = graph.getFunctions();
+
+		// index variables and distinct tables
+		Map<DecisionVariable, Integer> variableIndex = new IdentityHashMap<DecisionVariable, Integer>();
+		for (int i = 0; i < vns.length; i++)
+			variableIndex.put(vns[i].getDecisionVariable(), i);
+		Map<UtilityTable, Integer> tableIndex = new IdentityHashMap<UtilityTable, Integer>();
+		for (Function f : functions) {
+			if (!(f instanceof TableFunction))
+				throw new IllegalArgumentException("function " + f + " is not a TableFunction");
+			tableIndex.putIfAbsent(((TableFunction) f).getTable(), tableIndex.size());
+		}
+		UtilityTable[] tables = new UtilityTable[tableIndex.size()];
+		for (Map.Entry<UtilityTable, Integer> e : tableIndex.entrySet())
+			tables[e.getValue()] = e.getKey();
+
+		BinaryWriter.write(file, out -> {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.put(sourceHash);
+			out.putInt(agents.length);
+			out.putInt(vns.length);
+			out.putInt(tables.length);
+			out.putInt(functions.length);
+
+			for (Agent a : agents) {
+				out.putString(a.getId());
+				int[] vars = new int[a.getDecisionVariables().length];
+				for (int i = 0; i < vars.length; i++)
+					vars[i] = variableIndex.get(a.getDecisionVariables()[i]);
+				out.putInts(vars);
+			}
+
+			for (VariableNode vn : vns) {
+				out.putString(vn.getDecisionVariable().toString());
+				out.putInts(vn.getDecisionVariable().getDomain());
+			}
+
+			for (UtilityTable t : tables) {
+				out.putInts(t.getSizes());
+				out.putFloats(t.getUtilities());
+			}
+
+			for (Function f : functions) {
+				out.putString(f.toString());
+				out.putInt(tableIndex.get(((TableFunction) f).getTable()));
+				DecisionVariable[] scope = f.getDecisionVariables();
+				out.putInt(scope.length);
+				for (DecisionVariable v : scope)
+					out.putInt(variableIndex.get(v));
+			}
+		});
+	}
+
+	/**
+	 * Memory-maps a compiled instance, whose utility tables are used in place.
+	 *
+	 * @param file the compiled instance
+	 * @return the factor graph
+	 * @throws IOException if file cannot be read, is not a compiled instance or is
+	 *                     corrupt
+	 */
+	public static FactorGraph read(Path file) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // valid after closing
+		}
+		ByteBuffer in = buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (in.remaining() < 8 + HASH_LENGTH || in.getInt() != MAGIC || in.getInt() != VERSION)
+			throw new IOException(file + " is not a compiled instance");
+		in.position(in.position() + HASH_LENGTH);
+
+		// counts and indices are checked against the file, so that any corruption fails here
+		try {
+			return read(in);
+		} catch (RuntimeException e) {
+			throw new IOException(file + " is corrupt", e);
+		}
+	}
+
+	private static FactorGraph read(ByteBuffer in) {
+		Agent[] agents = new Agent[BinaryWriter.getLength(in, 4)];
+		DecisionVariable[] variables = new DecisionVariable[BinaryWriter.getLength(in, 4)];
+		UtilityTable[] tables = new UtilityTable[BinaryWriter.getLength(in, 4)];
+		Function[] functions = new Function[BinaryWriter.getLength(in, 4)];
+
+		// agents refer to variables, which are read next
+		String[] agentIds = new String[agents.length];
+		int[][] agentVariables = new int[agents.length][];
+		for (int i = 0; i < agents.length; i++) {
+			agentIds[i] = BinaryWriter.getString(in);
+			agentVariables[i] = BinaryWriter.getInts(in);
+		}
+
+		for (int i = 0; i < variables.length; i++) {
+			String id = BinaryWriter.getString(in);
+			variables[i] = new DecisionVariable(BinaryWriter.getInts(in), id);
+		}
+
+		for (int i = 0; i < agents.length; i++) {
+			DecisionVariable[] vars = new DecisionVariable[agentVariables[i].length];
+			for (int j = 0; j < vars.length; j++)
+				vars[j] = variables[agentVariables[i][j]];
+			agents[i] = new Agent(agentIds[i], vars);
+		}
+
+		for (int i = 0; i < tables.length; i++) {
+			int[] sizes = BinaryWriter.getInts(in);
+			int size = UtilityTable.getSize(sizes);
+			if (size * 4L > in.remaining())
+				throw new BufferUnderflowException();
+			ByteBuffer bytes = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			bytes.limit(in.position() + size * 4);
+			FloatBuffer utilities = bytes.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+			tables[i] = new UtilityTable(sizes, utilities);
+			in.position(in.position() + size * 4);
+		}
+
+		for (int i = 0; i < functions.length; i++) {
+			String id = BinaryWriter.getString(in);
+			UtilityTable table = tables[in.getInt()];
+			DecisionVariable[] scope = new DecisionVariable[BinaryWriter.getLength(in, 4)];
+			for (int j = 0; j < scope.length; j++)
+				scope[j] = variables[in.getInt()];
+			functions[i] = new TableFunction(scope, id, table);
+		}
+
+		return new FactorGraph(agents, functions);
+	}
+
+}
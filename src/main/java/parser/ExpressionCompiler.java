@@ -0,0 +1,262 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import function.Expression;
+
+/**
+ * Compiles the functional expressions of XCSP 2.1 predicates and functions,
+ * such as "if(eq(X0,X1),10,abs(sub(X0,X1)))", into trees of lambdas.
+ *
+ * The text is parsed once; compile() then binds the formal parameters to the
+ * arguments of a constraint, which are either variables of its scope or
+ * constants, and folds the constant subexpressions. Booleans are 1 and 0. A
+ * division or modulo by zero is undefined and throws an ArithmeticException
+ * when evaluated, which ExpressionFunction maps to an infeasible assignment.
+ *
+ * @author Luca CPZ
+ */
+public class ExpressionCompiler {
+
+	/** A node of the parsed expression */
+	private static class Node {
+
+		final String operator; // null for constants and parameters
+		final int value; // value of a constant
+		final int parameter; // index of a parameter, -1 otherwise
+		final Node[] arguments;
+
+		Node(String operator, int value, int parameter, Node[] arguments) {
+			this.operator = operator;
+			this.value = value;
+			this.parameter = parameter;
+			this.arguments = arguments;
+		}
+	}
+
+	/** A compiled constant, which can be folded */
+	private static class Constant implements Expression {
+
+		final int value;
+
+		Constant(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int evaluate(int[] values) {
+			return value;
+		}
+	}
+
+	private final String[] parameters;
+	private final Node root;
+
+	// parsing state
+	private String text;
+	private int pos;
+
+	/**
+	 * @param functional the expression
+	 * @param parameters the names of its formal parameters
+	 */
+	public ExpressionCompiler(String functional, String[] parameters) {
+		this.parameters = parameters;
+		text = functional;
+		root = parse();
+		if (skipSpaces() < text.length())
+			throw error("unexpected character");
+		text = null;
+	}
+
+	/**
+	 * @param arguments the argument of each formal parameter, either the name of a
+	 *                  variable of scope or an integer constant
+	 * @param scope     the names of the variables of the constraint
+	 * @return the expression over the values of the variables of scope
+	 */
+	public Expression compile(String[] arguments, String[] scope) {
+		if (arguments.length != parameters.length)
+			throw new IllegalArgumentException(
+					arguments.length + " arguments given to an expression of " + parameters.length + " parameters");
+
+		Expression[] bound = new Expression[arguments.length];
+		for (int i = 0; i < arguments.length; i++) {
+			int j = Arrays.asList(scope).indexOf(arguments[i]);
+			if (j >= 0) {
+				bound[i] = values -> values[j];
+				continue;
+			}
+			try {
+				bound[i] = new Constant(Integer.parseInt(arguments[i]));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("argument " + arguments[i] + " is neither in the scope nor a constant");
+			}
+		}
+
+		return compile(root, bound);
+	}
+
+	private static Expression compile(Node node, Expression[] bound) {
+		if (node.operator == null)
+			return node.parameter < 0 ? new Constant(node.value) : bound[node.parameter];
+
+		Expression[] args = new Expression[node.arguments.length];
+		boolean constant = true;
+		for (int i = 0; i < args.length; i++) {
+			args[i] = compile(node.arguments[i], bound);
+			constant &= args[i] instanceof Constant;
+		}
+
+		Expression e = combine(node.operator, args);
+		if (!constant)
+			return e;
+
+		// undefined subexpressions are not folded, as they may be in a branch of if() that is never taken
+		try {
+			return new Constant(e.evaluate(null));
+		} catch (ArithmeticException ex) {
+			return e;
+		}
+	}
+
+	private static Expression combine(String operator, Expression[] args) {
+		Expression a = args[0], b = args.length > 1 ? args[1] : null, c = args.length > 2 ? args[2] : null;
+
+		switch (operator) {
+		case "neg":
+			return v -> -a.evaluate(v);
+		case "abs":
+			return v -> Math.abs(a.evaluate(v));
+		case "not":
+			return v -> a.evaluate(v) != 0 ? 0 : 1;
+		case "add":
+			return v -> a.evaluate(v) + b.evaluate(v);
+		case "sub":
+			return v -> a.evaluate(v) - b.evaluate(v);
+		case "mul":
+			return v -> a.evaluate(v) * b.evaluate(v);
+		case "div":
+			return v -> a.evaluate(v) / b.evaluate(v);
+		case "mod":
+			return v -> a.evaluate(v) % b.evaluate(v);
+		case "pow":
+			return v -> (int) Math.pow(a.evaluate(v), b.evaluate(v));
+		case "min":
+			return v -> Math.min(a.evaluate(v), b.evaluate(v));
+		case "max":
+			return v -> Math.max(a.evaluate(v), b.evaluate(v));
+		case "eq":
+			return v -> a.evaluate(v) == b.evaluate(v) ? 1 : 0;
+		case "ne":
+			return v -> a.evaluate(v) != b.evaluate(v) ? 1 : 0;
+		case "ge":
+			return v -> a.evaluate(v) >= b.evaluate(v) ? 1 : 0;
+		case "gt":
+			return v -> a.evaluate(v) > b.evaluate(v) ? 1 : 0;
+		case "le":
+			return v -> a.evaluate(v) <= b.evaluate(v) ? 1 : 0;
+		case "lt":
+			return v -> a.evaluate(v) < b.evaluate(v) ? 1 : 0;
+		case "and":
+			return v -> a.evaluate(v) != 0 && b.evaluate(v) != 0 ? 1 : 0;
+		case "or":
+			return v -> a.evaluate(v) != 0 || b.evaluate(v) != 0 ? 1 : 0;
+		case "xor":
+			return v -> (a.evaluate(v) != 0) != (b.evaluate(v) != 0) ? 1 : 0;
+		case "iff":
+			return v -> (a.evaluate(v) != 0) == (b.evaluate(v) != 0) ? 1 : 0;
+		case "if":
+			return v -> a.evaluate(v) != 0 ? b.evaluate(v) : c.evaluate(v);
+		default:
+			throw new IllegalStateException(operator); // checked while parsing
+		}
+	}
+
+	/** @return the number of arguments of operator, -1 if it is unknown */
+	private static int getArity(String operator) {
+		switch (operator) {
+		case "neg":
+		case "abs":
+		case "not":
+			return 1;
+		case "if":
+			return 3;
+		case "add":
+		case "sub":
+		case "mul":
+		case "div":
+		case "mod":
+		case "pow":
+		case "min":
+		case "max":
+		case "eq":
+		case "ne":
+		case "ge":
+		case "gt":
+		case "le":
+		case "lt":
+		case "and":
+		case "or":
+		case "xor":
+		case "iff":
+			return 2;
+		default:
+			return -1;
+		}
+	}
+
+	private Node parse() {
+		int start = skipSpaces();
+		while (pos < text.length()
+				&& (Character.isLetterOrDigit(text.charAt(pos)) || "_.-+".indexOf(text.charAt(pos)) >= 0))
+			pos++;
+		String token = text.substring(start, pos);
+		if (token.isEmpty())
+			throw error("missing operand");
+
+		if (skipSpaces() < text.length() && text.charAt(pos) == '(') {
+			int arity = getArity(token);
+			if (arity < 0)
+				throw error("unknown operator " + token);
+
+			List<Node> args = new ArrayList<Node>(arity);
+			do {
+				pos++; // skip '(' or ','
+				args.add(parse());
+			} while (skipSpaces() < text.length() && text.charAt(pos) == ',');
+			if (pos == text.length() || text.charAt(pos++) != ')')
+				throw error("missing )");
+			if (args.size() != arity)
+				throw error(token + " takes " + arity + " arguments");
+
+			return new Node(token, 0, -1, args.toArray(new Node[args.size()]));
+		}
+
+		if (token.equals("true") || token.equals("false"))
+			return new Node(null, token.equals("true") ? 1 : 0, -1, null);
+
+		int parameter = Arrays.asList(parameters).indexOf(token);
+		if (parameter >= 0)
+			return new Node(null, 0, parameter, null);
+
+		try {
+			return new Node(null, Integer.parseInt(token), -1, null);
+		} catch (NumberFormatException e) {
+			throw error("unknown parameter " + token);
+		}
+	}
+
+	private int skipSpaces() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+			pos++;
+		return pos;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos + " of \"" + text + "\"");
+	}
+
+}
@@ -0,0 +1,390 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import dcop.Agent;
+import dcop.DecisionVariable;
+import dcop.Function;
+import factorgraph.FactorGraph;
+import factorgraph.FunctionNode;
+import function.Expression;
+import function.ExpressionFunction;
+import function.SparseTable;
+import function.SparseTableFunction;
+import function.TableFunction;
+import function.UtilityTable;
+
+/**
+ * Builds the factor graph of an XCSP problem defined by extensional relations
+ * or by intensional predicates and functions.
+ *
+ * Costs become utilities, negated unless the problem is a maximisation one, and
+ * infinite costs become negative infinity utilities. Each relation is decoded
+ * once into a dense UtilityTable for each combination of domains it is used
+ * with, and the table is shared by all the constraints referencing it. Tables
+ * are decoded in parallel. Relations that list a small part of a large joint
+ * space are decoded into SparseTables instead.
+ *
+ * Predicates are hard constraints, and functions give costs. Their expressions
+ * are compiled once, and tabulated as well if their joint space is at most
+ * TABULATION_LIMIT.
+ *
+ * @author Luca CPZ
+ */
+public class FactorGraphBuilder {
+
+	/** Largest joint space of an intensional constraint that is tabulated */
+	public static final int TABULATION_LIMIT = Function.TABULATION_LIMIT;
+
+	/** Largest joint space of a relation that is always stored in a dense table */
+	public static final int DENSE_LIMIT = 1 << 16;
+
+	/**
+	 * @param path the path of an XCSP file
+	 * @return the factor graph of the problem
+	 */
+	public static FactorGraph build(String path) {
+		return build(new XCSPparser(path));
+	}
+
+	/**
+	 * @param parser a parsed XCSP problem
+	 * @return the factor graph of the problem
+	 */
+	public static FactorGraph build(XCSPparser parser) {
+		Map<String, DecisionVariable> variables = new HashMap<String, DecisionVariable>();
+		List<Agent> agents = getAgents(parser, variables);
+		List<Function> functions = getFunctions(parser, variables);
+
+		return new FactorGraph(agents.toArray(new Agent[agents.size()]),
+				functions.toArray(new Function[functions.size()]));
+	}
+
+	/**
+	 * Applies the changes described by a delta file to a factor graph, keeping
+	 * the messages and values of the nodes that are not removed.
+	 *
+	 * A delta file has the structure of an XCSP file, with an additional
+	 * <remove> element listing the agents and constraints to remove. The other
+	 * agents, with their variables, are added, and the constraints are added or,
+	 * if the graph has a function with the same name, replace it. The delta file
+	 * must define the domains, relations, predicates and functions it uses, while
+	 * constraints can refer to the variables of the graph.
+	 *
+	 * @param graph the factor graph
+	 * @param path  the path of a delta file
+	 */
+	public static void applyDelta(FactorGraph graph, String path) {
+		applyDelta(graph, new XCSPparser(path));
+	}
+
+	/**
+	 * @param graph  the factor graph
+	 * @param parser a parsed delta file
+	 * @see #applyDelta(FactorGraph, String)
+	 */
+	public static void applyDelta(FactorGraph graph, XCSPparser parser) {
+		Map<String, Agent> agentsById = new HashMap<String, Agent>();
+		for (Agent a : graph.getAgents())
+			agentsById.put(a.getId(), a);
+		Map<String, Function> functionsById = new HashMap<String, Function>();
+		for (Function f : graph.getFunctions())
+			functionsById.put(f.toString(), f);
+
+		// the node arrays of graph are rebuilt once, after all the changes
+		graph.update(() -> {
+			for (String name : parser.getRemovedConstraints()) {
+				Function f = functionsById.remove(name);
+				if (f == null)
+					throw new IllegalArgumentException("constraint " + name + " is not in the graph");
+				graph.removeFunction(f);
+			}
+
+			for (String id : parser.getRemovedAgents()) {
+				Agent a = agentsById.remove(id);
+				if (a == null)
+					throw new IllegalArgumentException("agent " + id + " is not in the graph");
+				for (DecisionVariable x : a.getDecisionVariables())
+					for (FunctionNode fn : x.getVariableNode().getNeighbours())
+						functionsById.remove(fn.getFunction().toString());
+				graph.removeAgent(a); // also removes the functions of its variables
+			}
+
+			// new variables, which must belong to new agents
+			Map<String, DecisionVariable> variables = new HashMap<String, DecisionVariable>();
+			for (String name : parser.getVariableList()) {
+				String owner = parser.getOwner(name);
+				if (owner != null && agentsById.containsKey(owner))
+					throw new IllegalArgumentException(
+							"variable " + name + " cannot be added to existing agent " + owner);
+			}
+			for (Agent a : getAgents(parser, variables)) {
+				if (agentsById.containsKey(a.getId()))
+					throw new IllegalArgumentException("agent " + a.getId() + " is already in the graph");
+				graph.addAgent(a);
+			}
+
+			// constraints can also refer to the variables of the graph
+			for (Agent a : agentsById.values())
+				for (DecisionVariable x : a.getDecisionVariables())
+					variables.putIfAbsent(x.toString(), x);
+
+			// in the order of the delta file
+			for (Function f : getFunctions(parser, variables)) {
+				Function old = functionsById.get(f.toString());
+				if (old != null)
+					graph.replaceFunction(old, f);
+				else
+					graph.addFunction(f);
+			}
+		});
+	}
+
+	/**
+	 * @param parser    a parsed XCSP problem
+	 * @param variables receives the decision variables by name
+	 * @return the agents of the problem with their variables
+	 */
+	private static List<Agent> getAgents(XCSPparser parser, Map<String, DecisionVariable> variables) {
+		// the variables of each agent, in document order; unowned variables get their own agent
+		Map<String, List<DecisionVariable>> owned = new LinkedHashMap<String, List<DecisionVariable>>();
+		for (String agent : parser.getAgentList())
+			owned.put(agent, new ArrayList<DecisionVariable>());
+
+		for (String name : parser.getVariableList()) {
+			int[] domain = parser.getDomainValues(name);
+			if (domain == null)
+				throw new IllegalArgumentException("the domain of variable " + name + " is not defined");
+
+			DecisionVariable v = new DecisionVariable(domain, name);
+			variables.put(name, v);
+			String owner = parser.getOwner(name);
+			owned.computeIfAbsent(owner != null ? owner : name, k -> new ArrayList<DecisionVariable>()).add(v);
+		}
+
+		List<Agent> agents = new ArrayList<Agent>(owned.size());
+		for (Map.Entry<String, List<DecisionVariable>> e : owned.entrySet())
+			if (!e.getValue().isEmpty()) // agents without variables have no node in the factor graph
+				agents.add(new Agent(e.getKey(), e.getValue().toArray(new DecisionVariable[e.getValue().size()])));
+
+		return agents;
+	}
+
+	/**
+	 * @param parser    a parsed XCSP problem
+	 * @param variables the decision variables by name
+	 * @return the functions of the constraints of the problem
+	 */
+	private static List<Function> getFunctions(XCSPparser parser, Map<String, DecisionVariable> variables) {
+		// the scope and table key of each constraint, null if it is ignored
+		List<XCSPparser.Constraint> constraints = parser.getConstraints();
+		DecisionVariable[][] scopes = new DecisionVariable[constraints.size()][];
+		String[] keys = new String[scopes.length];
+
+		// the function of each intensional constraint, tabulated unless its key is null
+		ExpressionFunction[] intensional = new ExpressionFunction[scopes.length];
+		Map<String, ExpressionCompiler> compilers = new HashMap<String, ExpressionCompiler>();
+
+		// one constraint for each distinct table, which is decoded using its scope
+		Map<String, Integer> first = new LinkedHashMap<String, Integer>();
+
+		for (int i = 0; i < scopes.length; i++) {
+			XCSPparser.Constraint c = constraints.get(i);
+			DecisionVariable[] scope = getScope(c, variables);
+			if (scope == null) {
+				System.err.println("Constraint " + c.name + " involves random or unknown variables; ignoring it");
+				continue;
+			}
+			scopes[i] = scope;
+
+			// a relation used with different domains produces different tables
+			StringBuilder key = new StringBuilder(c.reference);
+			for (int j = 0; j < scope.length; j++) {
+				String domain = parser.getDomainName(c.scope[j]); // null for the variables of a graph
+				key.append(' ').append(domain != null ? domain : Arrays.toString(scope[j].getDomain()));
+			}
+
+			XCSPparser.Relation r = parser.getRelation(c.reference);
+			XCSPparser.Intension f = r == null ? parser.getIntension(c.reference) : null;
+			if (r == null && f == null)
+				throw new IllegalArgumentException("relation " + c.reference + " of constraint " + c.name
+						+ " is not defined");
+
+			if (r != null) {
+				if (r.arity != scope.length)
+					throw new IllegalArgumentException("relation " + r.name + " has arity " + r.arity
+							+ ", while constraint " + c.name + " has " + scope.length + " variables");
+			} else {
+				if (c.parameters == null)
+					throw new IllegalArgumentException("constraint " + c.name + " has no parameters");
+
+				ExpressionCompiler compiler = compilers.computeIfAbsent(f.name,
+						k -> new ExpressionCompiler(f.functional, f.parameters));
+				Expression e = compiler.compile(c.parameters, c.scope);
+				if (!f.predicate && !parser.isMaximize()) {
+					Expression cost = e;
+					e = values -> -cost.evaluate(values);
+				}
+				intensional[i] = new ExpressionFunction(scope, c.name, e, f.predicate);
+
+				long size = 1;
+				for (DecisionVariable v : scope)
+					size *= v.getDomain().length;
+				if (size > TABULATION_LIMIT)
+					continue;
+
+				// the same expression and domains give the same table only if the arguments match
+				key.append(" (");
+				for (String p : c.parameters) {
+					int j = Arrays.asList(c.scope).indexOf(p);
+					key.append(j >= 0 ? "#" + j : p).append(' ');
+				}
+				key.append(')');
+			}
+
+			keys[i] = key.toString();
+			first.putIfAbsent(keys[i], i);
+		}
+
+		// decode the distinct tables in parallel, then link the constraints to them
+		int[] decoded = first.values().stream().mapToInt(Integer::intValue).toArray();
+		Object[] decodedTables = new Object[decoded.length];
+		IntStream.range(0, decoded.length).parallel().forEach(i -> {
+			int c = decoded[i];
+			XCSPparser.Relation r = parser.getRelation(constraints.get(c).reference);
+			if (intensional[c] != null)
+				decodedTables[i] = intensional[c].tabulate();
+			else if (isSparse(r, scopes[c]))
+				decodedTables[i] = decodeSparse(r, scopes[c], parser.isMaximize());
+			else
+				decodedTables[i] = decode(r, scopes[c], parser.isMaximize());
+		});
+
+		Map<String, Object> tables = new HashMap<String, Object>(decoded.length * 2);
+		for (int i = 0; i < decoded.length; i++)
+			tables.put(keys[decoded[i]], decodedTables[i]);
+
+		List<Function> functions = new ArrayList<Function>(scopes.length);
+		for (int i = 0; i < scopes.length; i++)
+			if (keys[i] != null) {
+				Object table = tables.get(keys[i]);
+				String name = constraints.get(i).name;
+				if (table instanceof SparseTable)
+					functions.add(new SparseTableFunction(scopes[i], name, (SparseTable) table));
+				else
+					functions.add(new TableFunction(scopes[i], name, (UtilityTable) table));
+			} else if (intensional[i] != null)
+				functions.add(intensional[i]);
+
+		return functions;
+	}
+
+	private static DecisionVariable[] getScope(XCSPparser.Constraint c, Map<String, DecisionVariable> variables) {
+		DecisionVariable[] scope = new DecisionVariable[c.scope.length];
+		for (int i = 0; i < scope.length; i++)
+			if ((scope[i] = variables.get(c.scope[i])) == null)
+				return null;
+		return scope;
+	}
+
+	/**
+	 * @param r     a relation
+	 * @param scope the variables the relation is applied to
+	 * @return whether the relation is better stored in a SparseTable, that is, if
+	 *         its joint space is larger than DENSE_LIMIT and lists less than a
+	 *         quarter of it, or if it is too large for a UtilityTable
+	 */
+	public static boolean isSparse(XCSPparser.Relation r, DecisionVariable[] scope) {
+		double size = 1;
+		for (DecisionVariable v : scope)
+			size *= v.getDomain().length;
+		return size > Integer.MAX_VALUE || size > DENSE_LIMIT && r.getNbrTuples() * 4.0 < size;
+	}
+
+	/**
+	 * Decodes a relation into a sparse table of utilities, where the tuples that
+	 * are not listed have the default cost.
+	 *
+	 * @param r        the relation
+	 * @param scope    the variables the relation is applied to
+	 * @param maximize whether costs are utilities
+	 * @return the table of utilities
+	 */
+	public static SparseTable decodeSparse(XCSPparser.Relation r, DecisionVariable[] scope, boolean maximize) {
+		int[] sizes = new int[scope.length];
+		for (int i = 0; i < sizes.length; i++)
+			sizes[i] = scope[i].getDomain().length;
+
+		int[] indices = new int[r.tuples.length];
+		float[] utilities = new float[r.getNbrTuples()];
+		int n = 0;
+
+		tuples: for (int t = 0; t < r.getNbrTuples(); t++) {
+			for (int i = 0; i < sizes.length; i++) {
+				int idx = indexOf(scope[i].getDomain(), r.tuples[t * r.arity + i]);
+				if (idx < 0) // the tuple is outside the domains
+					continue tuples;
+				indices[n * sizes.length + i] = idx;
+			}
+			utilities[n++] = getUtility(r.costs[t], maximize);
+		}
+
+		return new SparseTable(sizes, Arrays.copyOf(indices, n * sizes.length), Arrays.copyOf(utilities, n),
+				getUtility(r.defaultCost, maximize));
+	}
+
+	/**
+	 * Decodes a relation into a dense table of utilities, where the tuples that
+	 * are not listed have the default cost.
+	 *
+	 * @param r        the relation
+	 * @param scope    the variables the relation is applied to
+	 * @param maximize whether costs are utilities
+	 * @return the table of utilities
+	 */
+	public static UtilityTable decode(XCSPparser.Relation r, DecisionVariable[] scope, boolean maximize) {
+		int[] sizes = new int[scope.length];
+		for (int i = 0; i < sizes.length; i++)
+			sizes[i] = scope[i].getDomain().length;
+
+		float[] utilities = new float[UtilityTable.getSize(sizes)];
+		Arrays.fill(utilities, getUtility(r.defaultCost, maximize));
+
+		tuples: for (int t = 0; t < r.getNbrTuples(); t++) {
+			int index = 0;
+			for (int i = 0; i < sizes.length; i++) {
+				int idx = indexOf(scope[i].getDomain(), r.tuples[t * r.arity + i]);
+				if (idx < 0) // the tuple is outside the domains
+					continue tuples;
+				index = index * sizes[i] + idx;
+			}
+			utilities[index] = getUtility(r.costs[t], maximize);
+		}
+
+		return new UtilityTable(sizes, utilities);
+	}
+
+	/**
+	 * @param cost     a cost
+	 * @param maximize whether costs are utilities
+	 * @return the utility of cost, negative infinity if cost is infinite
+	 */
+	public static float getUtility(float cost, boolean maximize) {
+		float u = maximize ? cost : 0f - cost; // 0f - cost avoids -0 utilities
+		return Float.isInfinite(u) ? Float.NEGATIVE_INFINITY : u;
+	}
+
+	private static int indexOf(int[] domain, int value) {
+		for (int i = 0; i < domain.length; i++)
+			if (domain[i] == value)
+				return i;
+		return -1;
+	}
+
+}
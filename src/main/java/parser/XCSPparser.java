@@ -24,22 +24,27 @@ How to contact the authors:
 
 package parser;
 
-import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import toolkit.Checker;
 
@@ -47,41 +52,723 @@ import toolkit.Checker;
  * An XCSP parser that provides convenient methods to extract information from
  * XCSP files
  *
+ * The file is read in a single streaming pass, which stores the agents,
+ * domains, variables, relations and constraints in compact structures; no
+ * document tree is kept in memory. The bodies of relations are only copied
+ * during the pass, and decoded in parallel once it ends.
+ *
+ * Intensional predicates and functions are kept as text, and compiled by
+ * ExpressionCompiler.
+ *
  * @author Thomas Leaute
  * @author Luca CPZ
- * @see frodo2.solutionSpaces.JaCoP.JaCoPxcspParser for parsing intensional
- *      constraints
  */
 public class XCSPparser {
 
-	private Element root;
+	/** An extensional relation, with the cost of every listed tuple */
+	public static class Relation {
+
+		/** Name of the relation */
+		public final String name;
+
+		/** Number of variables of each tuple */
+		public final int arity;
+
+		/** Listed tuples, stored contiguously, arity values each */
+		public final int[] tuples;
+
+		/** Cost of each listed tuple */
+		public final float[] costs;
+
+		/** Cost of each tuple that is not listed */
+		public final float defaultCost;
+
+		/**
+		 * Constructor
+		 *
+		 * @param name        name of the relation
+		 * @param arity       number of variables of each tuple
+		 * @param tuples      listed tuples, stored contiguously
+		 * @param costs       cost of each listed tuple
+		 * @param defaultCost cost of each tuple that is not listed
+		 */
+		public Relation(String name, int arity, int[] tuples, float[] costs, float defaultCost) {
+			this.name = name;
+			this.arity = arity;
+			this.tuples = tuples;
+			this.costs = costs;
+			this.defaultCost = defaultCost;
+		}
+
+		/** @return the number of listed tuples */
+		public int getNbrTuples() {
+			return costs.length;
+		}
+	}
+
+	/** A constraint */
+	public static class Constraint {
+
+		/** Name of the constraint */
+		public final String name;
+
+		/** Names of the variables in the scope of the constraint */
+		public final String[] scope;
+
+		/** Name of the relation defining the constraint */
+		public final String reference;
+
+		/** Owner of the constraint, or null */
+		public final String agent;
+
+		/** Arguments of the predicate or function defining the constraint, or null */
+		public final String[] parameters;
+
+		/**
+		 * Constructor
+		 *
+		 * @param name      name of the constraint
+		 * @param scope     names of the variables in the scope
+		 * @param reference name of the relation defining the constraint
+		 * @param agent     owner of the constraint, or null
+		 */
+		public Constraint(String name, String[] scope, String reference, String agent) {
+			this(name, scope, reference, agent, null);
+		}
+
+		/**
+		 * Constructor
+		 *
+		 * @param name       name of the constraint
+		 * @param scope      names of the variables in the scope
+		 * @param reference  name of the relation, predicate or function defining
+		 *                   the constraint
+		 * @param agent      owner of the constraint, or null
+		 * @param parameters variables of the scope or constants passed to the
+		 *                   predicate or function, or null
+		 */
+		public Constraint(String name, String[] scope, String reference, String agent, String[] parameters) {
+			this.name = name;
+			this.scope = scope;
+			this.reference = reference;
+			this.agent = agent;
+			this.parameters = parameters;
+		}
+	}
+
+	/** An intensional predicate or function */
+	public static class Intension {
+
+		/** Name of the predicate or function */
+		public final String name;
+
+		/** Whether this is a predicate, i.e. a hard constraint */
+		public final boolean predicate;
+
+		/** Names of the formal parameters */
+		public final String[] parameters;
+
+		/** The functional expression, e.g. "ne(X0,add(X1,1))" */
+		public final String functional;
+
+		/**
+		 * Constructor
+		 *
+		 * @param name       name of the predicate or function
+		 * @param predicate  whether this is a predicate
+		 * @param parameters names of the formal parameters
+		 * @param functional the functional expression
+		 */
+		public Intension(String name, boolean predicate, String[] parameters, String functional) {
+			this.name = name;
+			this.predicate = predicate;
+			this.parameters = parameters;
+			this.functional = functional;
+		}
+	}
+
+	/** The undecoded body of a relation, a range of XCSPparser.bodyText */
+	private static class RelationBody {
+
+		final String name;
+		final int arity;
+		final float cost, defaultCost; // cost of the tuples before the first explicit one, and of unlisted tuples
+		final int start, end;
+
+		RelationBody(String name, int arity, float cost, float defaultCost, int start, int end) {
+			this.name = name;
+			this.arity = arity;
+			this.cost = cost;
+			this.defaultCost = defaultCost;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/** A variable declaration */
+	private static class Variable {
+
+		final String name, domain, agent, scope;
+		final boolean random;
+
+		Variable(String name, String domain, String agent, String type, String scope) {
+			this.name = name;
+			this.domain = domain;
+			this.agent = agent;
+			this.scope = scope;
+			random = "random".equals(type);
+		}
+	}
 
+	/** A domain declaration */
+	private static class Domain {
+
+		final String name, values;
+		final int size;
+
+		int[] parsedValues; // values, parsed on first use
+
+		Domain(String name, int size, String values) {
+			this.name = name;
+			this.size = size;
+			this.values = values;
+		}
+
+		/** Parses values such as "1..3 5 7..9" */
+		int[] getValues() {
+			if (parsedValues != null)
+				return parsedValues;
+
+			int[] out = new int[size];
+			int n = 0;
+			for (String token : values.split("\\s+")) {
+				if (token.isEmpty())
+					continue;
+				int dots = token.indexOf("..");
+				int first = Integer.parseInt(dots < 0 ? token : token.substring(0, dots));
+				int last = dots < 0 ? first : Integer.parseInt(token.substring(dots + 2));
+				for (int v = first; v <= last; v++) {
+					if (n == out.length)
+						out = Arrays.copyOf(out, n * 2 + 1);
+					out[n++] = v;
+				}
+			}
+
+			if (Checker.assertive)
+				Checker.check(n == size, "domain " + name + " has " + n + " values instead of " + size);
+
+			return parsedValues = Arrays.copyOf(out, n);
+		}
+	}
+
+	private boolean maximize;
+	private List<String> agents = new ArrayList<String>();
+	private List<Domain> domains = new ArrayList<Domain>();
+	private List<Variable> variables = new ArrayList<Variable>();
+	private List<Relation> relations;
+	private List<Constraint> constraints = new ArrayList<Constraint>();
+	private List<Intension> intensions = new ArrayList<Intension>();
+
+	/* agents and constraints removed by a delta file */
+	private List<String> removedAgents = new ArrayList<String>();
+	private List<String> removedConstraints = new ArrayList<String>();
+
+	/* relation bodies, collected while streaming and decoded in parallel afterwards */
+	private List<RelationBody> bodies = new ArrayList<RelationBody>();
+	private char[] bodyText = new char[1 << 12];
+	private int bodyLength;
+
+	/* indices, built once after parsing */
+	private Map<String, Integer> variableIndex; // position of each variable in variables
+	private Map<String, Domain> domainIndex;
+	private Map<String, Relation> relationIndex;
+	private Map<String, Intension> intensionIndex;
+	private Map<String, Set<String>> variablesOf; // read-only variables of each owner, null key for no owner
+	private Set<String> agentSet, ownedVariables; // read-only, as returned by getAgents() and getVariables()
+	private Map<String, String> owners; // read-only, as returned by getOwners()
+	private int[][] constraintsOf; // for each variable, the constraints whose scope contains it
+	private int[][] neighboursOf; // for each variable, the other variables in the scopes of its constraints
+
+	/**
+	 * @param path the path of an XCSP file
+	 * @throws UncheckedIOException     if the file cannot be read
+	 * @throws IllegalArgumentException if the file is not well-formed XCSP
+	 */
 	public XCSPparser(String path) {
 		if (Checker.assertive)
 			Checker.check(path != null && path.length() > 0, "input path is not valid");
 
-		try {
-			Document document = new SAXBuilder().build(new File(path));
-			root = document.getRootElement();
-		} catch (JDOMException | IOException e) {
-			e.printStackTrace();
+		try (InputStream in = new FileInputStream(path)) {
+			XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+			try {
+				parse(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("cannot read " + path, e);
+		} catch (XMLStreamException e) {
+			throw new IllegalArgumentException("malformed XCSP file " + path + ": " + e.getMessage(), e);
 		}
+
+		decodeRelations();
+		index();
 	}
 
 	/**
-	 * Returns the set of agents in the problem.
+	 * Builds the maps from each variable to its domain, owner and constraints, and
+	 * the adjacency of the constraint graph, so that queries take O(1) or
+	 * O(degree) time instead of scanning the whole problem.
+	 */
+	private void index() {
+		int n = variables.size();
+
+		domainIndex = new HashMap<String, Domain>(domains.size() * 2);
+		for (Domain d : domains)
+			domainIndex.put(d.name, d);
+
+		relationIndex = new HashMap<String, Relation>(relations.size() * 2);
+		for (Relation r : relations)
+			relationIndex.put(r.name, r);
+
+		intensionIndex = new HashMap<String, Intension>(intensions.size() * 2);
+		for (Intension f : intensions)
+			intensionIndex.put(f.name, f);
+
+		variableIndex = new HashMap<String, Integer>(n * 2);
+		variablesOf = new HashMap<String, Set<String>>();
+		Set<String> nonRandom = new LinkedHashSet<String>();
+		Map<String, String> owned = new HashMap<String, String>(n * 2);
+		for (int i = 0; i < n; i++) {
+			Variable v = variables.get(i);
+			variableIndex.put(v.name, i);
+			variablesOf.computeIfAbsent(v.agent, k -> new LinkedHashSet<String>()).add(v.name);
+			if (!v.random)
+				nonRandom.add(v.name);
+			if (v.agent != null)
+				owned.put(v.name, v.agent);
+		}
+		variablesOf.replaceAll((agent, vars) -> Collections.unmodifiableSet(vars));
+		ownedVariables = Collections.unmodifiableSet(nonRandom);
+		owners = Collections.unmodifiableMap(owned);
+		agentSet = Collections.unmodifiableSet(new LinkedHashSet<String>(agents));
+
+		// count the constraints of each variable, then fill the arrays
+		int[][] scopes = new int[constraints.size()][];
+		int[] degree = new int[n];
+		for (int c = 0; c < scopes.length; c++) {
+			String[] scope = constraints.get(c).scope;
+			scopes[c] = new int[scope.length];
+			for (int j = 0; j < scope.length; j++) {
+				Integer i = variableIndex.get(scope[j]);
+				if (Checker.assertive)
+					Checker.check(i != null, "unknown variable " + scope[j] + " in constraint " + constraints.get(c).name);
+				scopes[c][j] = i != null ? i : -1;
+				if (i != null)
+					degree[i]++;
+			}
+		}
+
+		constraintsOf = new int[n][];
+		for (int i = 0; i < n; i++)
+			constraintsOf[i] = new int[degree[i]];
+		Arrays.fill(degree, 0);
+		for (int c = 0; c < scopes.length; c++)
+			for (int i : scopes[c])
+				if (i >= 0 && (degree[i] == 0 || constraintsOf[i][degree[i] - 1] != c)) // skip repeated variables
+					constraintsOf[i][degree[i]++] = c;
+
+		// merge the scopes of the constraints of each variable
+		neighboursOf = new int[n][];
+		int[] mark = new int[n];
+		Arrays.fill(mark, -1);
+		int[] buffer = new int[n];
+		for (int i = 0; i < n; i++) {
+			int size = 0;
+			mark[i] = i;
+			for (int j = 0; j < degree[i]; j++)
+				for (int k : scopes[constraintsOf[i][j]])
+					if (k >= 0 && mark[k] != i) {
+						mark[k] = i;
+						buffer[size++] = k;
+					}
+			neighboursOf[i] = Arrays.copyOf(buffer, size);
+			if (degree[i] < constraintsOf[i].length)
+				constraintsOf[i] = Arrays.copyOf(constraintsOf[i], degree[i]);
+		}
+	}
+
+	private void parse(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			if (reader.next() != XMLStreamConstants.START_ELEMENT)
+				continue;
+
+			switch (reader.getLocalName()) {
+			case "presentation":
+				maximize = Boolean.parseBoolean(reader.getAttributeValue(null, "maximize"));
+				break;
+			case "agent":
+				agents.add(reader.getAttributeValue(null, "name"));
+				break;
+			case "domain":
+				domains.add(new Domain(reader.getAttributeValue(null, "name"),
+						Integer.parseInt(reader.getAttributeValue(null, "nbValues")), reader.getElementText().trim()));
+				break;
+			case "variable":
+				variables.add(new Variable(reader.getAttributeValue(null, "name"),
+						reader.getAttributeValue(null, "domain"), reader.getAttributeValue(null, "agent"),
+						reader.getAttributeValue(null, "type"), reader.getAttributeValue(null, "scope")));
+				break;
+			case "relation":
+				bodies.add(parseRelation(reader));
+				break;
+			case "predicate":
+			case "function":
+				intensions.add(parseIntension(reader));
+				break;
+			case "constraint":
+				constraints.add(parseConstraint(reader));
+				break;
+			case "remove":
+				parseRemovals(reader);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reads the removals of a delta file, e.g. <remove><agent name="A1"/>
+	 * <constraint name="C3"/></remove>.
+	 */
+	private void parseRemovals(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getAttributeValue(null, "name");
+			if (reader.getLocalName().equals("agent"))
+				removedAgents.add(name);
+			else if (reader.getLocalName().equals("constraint"))
+				removedConstraints.add(name);
+			skipElement(reader);
+		}
+	}
+
+	private static Constraint parseConstraint(XMLStreamReader reader) throws XMLStreamException {
+		String name = reader.getAttributeValue(null, "name");
+		String[] scope = reader.getAttributeValue(null, "scope").trim().split("\\s+");
+		String reference = reader.getAttributeValue(null, "reference");
+		String agent = reader.getAttributeValue(null, "agent");
+
+		// intensional constraints list the arguments of their predicate or function
+		String[] parameters = null;
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+			if (reader.getLocalName().equals("parameters"))
+				parameters = reader.getElementText().trim().split("\\s+");
+			else
+				skipElement(reader);
+
+		return new Constraint(name, scope, reference, agent, parameters);
+	}
+
+	/**
+	 * Reads a predicate or a function, whose formal parameters are listed with
+	 * their types, e.g. "int X0 int X1".
+	 */
+	private static Intension parseIntension(XMLStreamReader reader) throws XMLStreamException {
+		String name = reader.getAttributeValue(null, "name");
+		boolean predicate = reader.getLocalName().equals("predicate");
+		String[] parameters = new String[0];
+		String functional = null;
+
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+			switch (reader.getLocalName()) {
+			case "parameters":
+				String[] tokens = reader.getElementText().trim().split("\\s+");
+				parameters = new String[tokens.length / 2];
+				for (int i = 0; i < parameters.length; i++)
+					parameters[i] = tokens[2 * i + 1]; // skip the type
+				break;
+			case "expression":
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+					if (reader.getLocalName().equals("functional"))
+						functional = reader.getElementText().trim();
+					else
+						skipElement(reader);
+				break;
+			default:
+				skipElement(reader);
+			}
+
+		if (functional == null)
+			throw new XMLStreamException("predicate or function " + name + " has no functional expression");
+
+		return new Intension(name, predicate, parameters, functional);
+	}
+
+	/** Skips the current element and its content */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		for (int depth = 1; depth > 0;) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	/**
+	 * Reads the header of a relation and appends its body to bodyText, to be
+	 * decoded later by decodeRelations().
 	 *
-	 * @return set of agents
+	 * For "supports" and "conflicts" relations, listed tuples have respectively
+	 * cost 0 and infinity, and the other tuples the opposite cost.
 	 */
-	public Set<String> getAgents() {
-		HashSet<String> agents = new HashSet<String>();
+	private RelationBody parseRelation(XMLStreamReader reader) throws XMLStreamException {
+		String name = reader.getAttributeValue(null, "name");
+		int arity = Integer.parseInt(reader.getAttributeValue(null, "arity"));
+		String semantics = reader.getAttributeValue(null, "semantics");
+		String defaultCost = reader.getAttributeValue(null, "defaultCost");
+
+		float cost, defCost;
+		if ("supports".equals(semantics)) {
+			cost = 0;
+			defCost = Float.POSITIVE_INFINITY;
+		} else if ("conflicts".equals(semantics)) {
+			cost = Float.POSITIVE_INFINITY;
+			defCost = 0;
+		} else {
+			cost = Float.NaN;
+			defCost = defaultCost != null ? parseCost(defaultCost) : Float.POSITIVE_INFINITY;
+		}
+
+		// copy the text of the element, without creating a String
+		int start = bodyLength, event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT)
+			switch (event) {
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				int length = reader.getTextLength();
+				if (bodyLength + length > bodyText.length)
+					bodyText = Arrays.copyOf(bodyText, Math.max(bodyText.length * 2, bodyLength + length));
+				System.arraycopy(reader.getTextCharacters(), reader.getTextStart(), bodyText, bodyLength, length);
+				bodyLength += length;
+				break;
+			case XMLStreamConstants.START_ELEMENT:
+				throw new XMLStreamException("relation " + name + " contains an element", reader.getLocation());
+			}
+
+		return new RelationBody(name, arity, cost, defCost, start, bodyLength);
+	}
+
+	/**
+	 * Decodes the bodies of all relations in parallel, then frees their text.
+	 */
+	private void decodeRelations() {
+		char[] text = bodyText;
+		Relation[] decoded = new Relation[bodies.size()];
+		IntStream.range(0, decoded.length).parallel().forEach(i -> decoded[i] = decode(bodies.get(i), text));
+
+		relations = new ArrayList<Relation>(Arrays.asList(decoded));
+		bodies = null;
+		bodyText = null;
+	}
+
+	/**
+	 * Decodes a relation, whose tuples are listed as "cost: v1 v2 | v1 v2 | ...",
+	 * where a cost applies to the following tuples until the next cost.
+	 */
+	private static Relation decode(RelationBody body, char[] text) {
+		int start = skipSpaces(text, body.start, body.end), end = body.end;
+
+		int nbrTuples = start < end ? 1 : 0;
+		for (int i = start; i < end; i++)
+			if (text[i] == '|')
+				nbrTuples++;
+
+		int arity = body.arity;
+		int[] tuples = new int[nbrTuples * arity];
+		float[] costs = new float[nbrTuples];
+		float cost = body.cost;
+
+		for (int t = 0, pos = start; t < nbrTuples; t++) {
+			int tupleEnd = indexOf(text, '|', pos, end);
+			int colon = indexOf(text, ':', pos, tupleEnd);
+			if (colon < tupleEnd) {
+				cost = parseCost(text, pos, colon);
+				pos = colon + 1;
+			}
+
+			for (int j = 0; j < arity; j++) {
+				pos = skipSpaces(text, pos, tupleEnd);
+				int valueEnd = pos;
+				while (valueEnd < tupleEnd && !Character.isWhitespace(text[valueEnd]))
+					valueEnd++;
+				if (pos == valueEnd)
+					throw new NumberFormatException("tuple " + t + " of relation " + body.name + " has wrong arity");
+				tuples[t * arity + j] = parseInt(text, pos, valueEnd);
+				pos = valueEnd;
+			}
+
+			if (Checker.assertive)
+				Checker.check(skipSpaces(text, pos, tupleEnd) == tupleEnd,
+						"tuple " + t + " of relation " + body.name + " has wrong arity");
+
+			costs[t] = cost;
+			pos = tupleEnd + 1;
+		}
+
+		return new Relation(body.name, arity, tuples, costs, body.defaultCost);
+	}
+
+	private static int skipSpaces(char[] text, int pos, int end) {
+		while (pos < end && Character.isWhitespace(text[pos]))
+			pos++;
+		return pos;
+	}
+
+	/** @return the position of c in text[pos, end), or end */
+	private static int indexOf(char[] text, char c, int pos, int end) {
+		while (pos < end && text[pos] != c)
+			pos++;
+		return pos;
+	}
+
+	/** Parses the integer in text[start, end) */
+	private static int parseInt(char[] text, int start, int end) {
+		boolean negative = text[start] == '-';
+		int i = negative || text[start] == '+' ? start + 1 : start;
+		if (i == end || end - i > 9) // may overflow, let Integer report it
+			return Integer.parseInt(new String(text, start, end - start));
+
+		int value = 0;
+		for (; i < end; i++) {
+			int digit = text[i] - '0';
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException("invalid integer \"" + new String(text, start, end - start) + "\"");
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/** Parses the cost in text[start, end), surrounded by spaces */
+	private static float parseCost(char[] text, int start, int end) {
+		start = skipSpaces(text, start, end);
+		while (end > start && Character.isWhitespace(text[end - 1]))
+			end--;
+
+		// integer costs are the common case; (float) rounds a long exactly as parseFloat would
+		boolean negative = start < end && text[start] == '-';
+		int i = negative ? start + 1 : start;
+		if (i < end && end - i <= 18) {
+			long value = 0;
+			for (; i < end && text[i] >= '0' && text[i] <= '9'; i++)
+				value = value * 10 + text[i] - '0';
+			if (i == end)
+				return negative ? 0f - value : value; // "-0" is read as 0, like every other cost
+		}
+
+		return parseCost(new String(text, start, end - start));
+	}
+
+	/**
+	 * @param s a cost, possibly "infinity" or "-infinity"
+	 * @return the cost as a float
+	 */
+	public static float parseCost(String s) {
+		s = s.trim();
+		if ("infinity".equals(s))
+			return Float.POSITIVE_INFINITY;
+		if ("-infinity".equals(s))
+			return Float.NEGATIVE_INFINITY;
+		return Float.parseFloat(s);
+	}
+
+	/**
+	 * @return whether the problem is a maximisation problem
+	 */
+	public boolean isMaximize() {
+		return maximize;
+	}
+
+	/**
+	 * @return the relations of the problem, in document order
+	 */
+	public List<Relation> getRelations() {
+		return relations;
+	}
 
-		for (Element var : (List<Element>) root.getChild("agents").getChildren())
-			agents.add(var.getAttributeValue("name"));
+	/**
+	 * @param name the name of a relation
+	 * @return the relation, or null if it is not defined
+	 */
+	public Relation getRelation(String name) {
+		return relationIndex.get(name);
+	}
 
+	/**
+	 * @param name the name of a predicate or function
+	 * @return the predicate or function, or null if it is not defined
+	 */
+	public Intension getIntension(String name) {
+		return intensionIndex.get(name);
+	}
+
+	/**
+	 * @return the constraints of the problem, in document order
+	 */
+	public List<Constraint> getConstraints() {
+		return constraints;
+	}
+
+	/**
+	 * @return the agents of the problem, in document order
+	 */
+	List<String> getAgentList() {
 		return agents;
 	}
 
+	/**
+	 * @return the agents removed by a delta file
+	 */
+	List<String> getRemovedAgents() {
+		return removedAgents;
+	}
+
+	/**
+	 * @return the constraints removed by a delta file
+	 */
+	List<String> getRemovedConstraints() {
+		return removedConstraints;
+	}
+
+	/**
+	 * @return the variables of the problem that are not random, in document order
+	 */
+	List<String> getVariableList() {
+		List<String> out = new ArrayList<String>(variables.size());
+		for (Variable v : variables)
+			if (!v.random)
+				out.add(v.name);
+		return out;
+	}
+
+	/**
+	 * @param var the variable
+	 * @return the name of the domain of \a var, or null if unknown
+	 */
+	public String getDomainName(String var) {
+		Integer i = variableIndex.get(var);
+		return i != null ? variables.get(i).domain : null;
+	}
+
+	/**
+	 * Returns the set of agents in the problem.
+	 *
+	 * @return read-only set of agents
+	 */
+	public Set<String> getAgents() {
+		return agentSet;
+	}
+
 	/**
 	 * Returns whether the input variable is defined as a random variable
 	 *
@@ -90,13 +777,10 @@ public class XCSPparser {
 	 *         or if the variable is unknown
 	 */
 	public boolean isRandom(String var) {
+		Integer i = variableIndex.get(var);
 
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren())
-			if (var.equals(varElmt.getAttributeValue("name")))
-				return new String("random").equals(varElmt.getAttributeValue("type"));
-
-		// Variable not found
-		return false;
+		// false if the variable is not found
+		return i != null && variables.get(i).random;
 	}
 
 	/**
@@ -106,30 +790,19 @@ public class XCSPparser {
 	 * @return the owner of the input variable
 	 */
 	public String getOwner(String var) {
-
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren())
-			if (varElmt.getAttributeValue("name").equals(var))
-				return varElmt.getAttributeValue("agent");
+		Integer i = variableIndex.get(var);
 
 		// The variable was not found
-		assert false : "Unknown variable '" + var + "'";
-		return null;
+		assert i != null : "Unknown variable '" + var + "'";
+		return i != null ? variables.get(i).agent : null;
 	}
 
 	/**
-	 * @return for each variable, the name of its owner agent
+	 * @return for each variable with an owner, the name of its owner agent,
+	 *         read-only
 	 */
 	public Map<String, String> getOwners() {
-
-		Map<String, String> out = new HashMap<String, String>(this.getNbrVars());
-
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) {
-			String owner = varElmt.getAttributeValue("agent");
-			if (owner != null)
-				out.put(varElmt.getAttributeValue("name"), owner);
-		}
-
-		return out;
+		return owners;
 	}
 
 	/**
@@ -139,7 +812,7 @@ public class XCSPparser {
 	 * @warning Ignores variables with no specified owner.
 	 */
 	public int getNbrVars() {
-		return this.getVariables().size();
+		return ownedVariables.size();
 	}
 
 	/**
@@ -149,24 +822,15 @@ public class XCSPparser {
 	 * @return the number of variables owned by \a owner
 	 */
 	public int getNbrVars(String owner) {
-		int nbrVars = 0;
-		for (Element variable : root.getChild("variables").getChildren())
-			if (owner.equals(variable.getAttributeValue("agent")))
-				nbrVars++;
-		return nbrVars;
+		Set<String> vars = variablesOf.get(owner);
+		return vars != null ? vars.size() : 0;
 	}
 
 	/**
-	 * @return all variables with a known owner
+	 * @return all variables with a known owner, read-only
 	 */
 	public Set<String> getVariables() {
-		Set<String> out = new HashSet<String>();
-
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren())
-			if (!"random".equals(varElmt.getAttributeValue("type"))) // ignore random variables
-				out.add(varElmt.getAttributeValue("name"));
-
-		return out;
+		return ownedVariables;
 	}
 
 	/**
@@ -174,23 +838,11 @@ public class XCSPparser {
 	 *
 	 * @param owner the name of the agent; if null, returns all variables with no
 	 *              specified owner
-	 * @return a set of variables owned by <i>owner</i>
+	 * @return a read-only set of variables owned by <i>owner</i>
 	 */
 	public Set<String> getVariables(String owner) {
-
-		Set<String> out = new HashSet<String>();
-
-		if (owner != null) {
-			for (Element var : (List<Element>) root.getChild("variables").getChildren())
-				if (owner.equals(var.getAttributeValue("agent")))
-					out.add(var.getAttributeValue("name"));
-
-		} else
-			for (Element var : (List<Element>) root.getChild("variables").getChildren())
-				if (var.getAttributeValue("agent") == null)
-					out.add(var.getAttributeValue("name"));
-
-		return out;
+		Set<String> vars = variablesOf.get(owner);
+		return vars != null ? vars : Collections.<String>emptySet();
 	}
 
 	/**
@@ -213,43 +865,18 @@ public class XCSPparser {
 	 */
 	public HashSet<String> getNeighbourVars(String var, final boolean withAnonymVars) {
 		HashSet<String> out = new HashSet<String>();
-		List<String> pending = Arrays.asList(var); // variable(s) whose direct neighbours will be returned
-		HashSet<String> done = new HashSet<String>();
-
-		do {
-			// Retrieve the next pending variable
-			String var2 = pending.remove(0);
-			if (!done.add(var2)) // we have already processed this variable
-				continue;
-
-			// Go through the list of constraint scopes
-			for (Element constraint : root.getChild("constraints").getChildren()) {
-
-				// Check if var2 is in the scope
-				String[] scope = constraint.getAttributeValue("scope").trim().split("\\s+");
-				Arrays.sort(scope);
-				if (Arrays.binarySearch(scope, var2) >= 0) {
-
-					// Go through the list of variables in the scope
-					for (String neighbour : scope) {
-
-						// Check if the neighbour is random
-						if (!this.isRandom(neighbour)) // not random
-							out.add(neighbour);
+		Integer i = variableIndex.get(var);
+		if (i == null)
+			return out;
 
-						else { // the neighbour is random
+		// Go through the adjacency list, which does not contain the variable itself
+		for (int j : neighboursOf[i]) {
+			Variable neighbour = variables.get(j);
 
-							// Add it to the list of neighbours if we are interested in random neighbours
-							if (withAnonymVars)
-								out.add(neighbour);
-						}
-					}
-				}
-			}
-		} while (!pending.isEmpty());
-
-		// Remove the variable itself from its list of neighbours
-		out.remove(var);
+			// Add random neighbours only if we are interested in them
+			if (!neighbour.random || withAnonymVars)
+				out.add(neighbour.name);
+		}
 
 		return out;
 	}
@@ -360,45 +987,27 @@ public class XCSPparser {
 	private HashSet<String> getAgentneighbours(String var) {
 
 		HashSet<String> out = new HashSet<String>();
+		Integer i = variableIndex.get(var);
+		if (i == null)
+			return out;
+
+		// Go through the constraints whose scope contains the variable
+		for (int c : constraintsOf[i]) {
+
+			// If the constraint has a specific owner, add it to the set of agents
+			String consOwner = constraints.get(c).agent;
+			if ("PUBLIC".equals(consOwner))
+				consOwner = null;
+			if (consOwner != null)
+				out.add(consOwner);
+		}
 
-		LinkedList<String> pending = new LinkedList<String>(); // variable(s) whose direct agent neighbours will be
-																// returned
-		pending.add(var);
-		HashSet<String> done = new HashSet<String>();
-		do {
-			// Retrieve the next pending variable
-			String var2 = pending.poll();
-			if (!done.add(var2)) // we have already processed this variable
-				continue;
-
-			// Go through the list of constraint scopes
-			for (Element constraint : (List<Element>) root.getChild("constraints").getChildren()) {
-
-				// Check if var2 is in the scope
-				String[] scope = constraint.getAttributeValue("scope").trim().split("\\s+");
-				Arrays.sort(scope);
-				if (Arrays.binarySearch(scope, var2) >= 0) {
-
-					// If the constraint has a specific owner, add it to the set of agents
-					String consOwner = constraint.getAttributeValue("agent");
-					if ("PUBLIC".equals(consOwner))
-						consOwner = null;
-					if (consOwner != null)
-						out.add(consOwner);
-
-					// Go through the list of variables in the scope
-					for (String neighbour : scope) {
-
-						// Check if the neighbour is random
-						if (!this.isRandom(neighbour)) { // not random
-							String varOwner = this.getOwner(neighbour);
-							if (varOwner != null)
-								out.add(varOwner);
-						}
-					}
-				}
-			}
-		} while (!pending.isEmpty());
+		// Go through the neighbour variables, and the variable itself
+		for (int j : neighboursOf[i])
+			if (!variables.get(j).random && variables.get(j).agent != null)
+				out.add(variables.get(j).agent);
+		if (!variables.get(i).random && variables.get(i).agent != null)
+			out.add(variables.get(i).agent);
 
 		// Add the variable's scope if present
 		HashSet<String> scope = this.getScope(var);
@@ -418,17 +1027,10 @@ public class XCSPparser {
 	 * @return the agent scope of the variable
 	 */
 	private HashSet<String> getScope(String var) {
-
-		for (Element varElmt : (List<Element>) this.root.getChild("variables").getChildren()) {
-			if (varElmt.getAttributeValue("name").equals(var)) {
-				String scope = varElmt.getAttributeValue("scope");
-				if (scope == null)
-					return null;
-				return new HashSet<String>(Arrays.asList(scope.split("\\s+")));
-			}
-		}
-
-		return null;
+		Integer i = variableIndex.get(var);
+		if (i == null || variables.get(i).scope == null)
+			return null;
+		return new HashSet<String>(Arrays.asList(variables.get(i).scope.split("\\s+")));
 	}
 
 	/** @see DCOPProblemInterface#getAgentneighbourhoods(java.lang.String) */
@@ -464,21 +1066,16 @@ public class XCSPparser {
 	 */
 	public int getDomainSize(String var) {
 
-		// Parse the name of the domain
-		String domName = null;
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) {
-			if (varElmt.getAttributeValue("name").equals(var)) {
-				domName = varElmt.getAttributeValue("domain");
-				break;
-			}
-		}
+		// Get the name of the domain
+		Integer i = variableIndex.get(var);
+		String domName = i != null ? variables.get(i).domain : null;
 		if (domName == null)
 			return -1;
 
-		// Parse the domain size
-		for (Element domElmt : (List<Element>) root.getChild("domains").getChildren())
-			if (domElmt.getAttributeValue("name").equals(domName))
-				return Integer.parseInt(domElmt.getAttributeValue("nbValues"));
+		// Get the domain size
+		Domain d = domainIndex.get(domName);
+		if (d != null)
+			return d.size;
 
 		// The domain is not defined
 		System.err.println("The domain " + domName + " for variable " + var + " is not defined");
@@ -492,8 +1089,27 @@ public class XCSPparser {
 	 * @return an array of domain values
 	 */
 	public Number[] getDomain(String var) {
-		// TODO
-		return null;
+		int[] values = getDomainValues(var);
+		if (values == null)
+			return null;
+
+		Number[] out = new Number[values.length];
+		for (int i = 0; i < values.length; i++)
+			out[i] = values[i];
+		return out;
+	}
+
+	/**
+	 * Extracts the domain of a given variable
+	 *
+	 * @param var the variable
+	 * @return the domain values, shared by all the variables with the same
+	 *         domain, or null if the variable or its domain is unknown
+	 */
+	public int[] getDomainValues(String var) {
+		String domName = getDomainName(var);
+		Domain d = domName != null ? domainIndex.get(domName) : null;
+		return d != null ? d.getValues() : null;
 	}
 
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Map;
 
 import algorithm.MaxSum;
+import algorithm.Solution;
 import dcop.Agent;
 import dcop.DecisionVariable;
 import dcop.Function;
@@ -80,13 +81,15 @@ public class GraphColouring {
 	}
 
 	public static void main (String[] args) {
-		MaxSum instance = new MaxSum(getExample());
+		FactorGraph graph = getExample();
+		MaxSum instance = new MaxSum(graph);
 		long executionTime = System.currentTimeMillis();
 		//instance.solve();
 		instance.solveSynchronous();
 		executionTime = System.currentTimeMillis() - executionTime;
 		System.out.println(String.format("%sExecution time: %d ms\n", instance.getResults(), executionTime));
-		System.out.println("Solution:\n" + instance.getSolution());
+		Solution solution = instance.getSolution();
+		System.out.println("Solution: " + solution + solution.format(graph));
 	}
 
 }
\ No newline at end of file
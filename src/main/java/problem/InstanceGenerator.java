@@ -0,0 +1,313 @@
+package problem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import dcop.Agent;
+import dcop.DecisionVariable;
+import dcop.Function;
+import factorgraph.FactorGraph;
+import factorgraph.VariableNode;
+import function.TableFunction;
+import function.UtilityTable;
+import function.WeightedGraphColouringFunction;
+import toolkit.Checker;
+import toolkit.IntGraph;
+import toolkit.RandomGraphFactory;
+
+/**
+ * Generates random DCOP instances directly as factor graphs, from a seed.
+ *
+ * Constraint graphs are built on primitive node ids, and each agent and
+ * function is created once, so that instances with millions of variables can
+ * be generated. The same seed and parameters always give the same instance,
+ * including the initial value of each variable node.
+ *
+ * @author Luca CPZ
+ */
+public class InstanceGenerator {
+
+	private final Random random;
+
+	/**
+	 * @param seed the seed of the instances generated by this instance
+	 */
+	public InstanceGenerator(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 * @param nbrNodes a number of nodes
+	 * @param density  the p1 density of a graph
+	 * @return the number of edges of a graph of nbrNodes nodes with density
+	 */
+	public static int getNbrEdges(int nbrNodes, double density) {
+		return (int) Math.round(density * nbrNodes * (nbrNodes - 1L) / 2);
+	}
+
+	/**
+	 * Generates a weighted graph colouring problem, as in section 5 of
+	 * 'Decentralised Coordination of Low-Power Embedded Devices Using the
+	 * Max-Sum Algorithm', Farinelli et al., AAMAS 2008.
+	 *
+	 * Each agent has a variable and a function of its variable and of the
+	 * variables of its neighbours, so the arity of a function is the degree of
+	 * its agent plus one. Functions whose joint space is larger than
+	 * Function.TABULATION_LIMIT are evaluated by each message instead of being
+	 * tabulated, and a joint space must fit in an int.
+	 *
+	 * @param nbrAgents  the number of agents
+	 * @param nbrEdges   the number of edges of the random constraint graph
+	 * @param nbrColours the number of colours
+	 * @return the factor graph
+	 * @throws IllegalArgumentException if an agent has too many neighbours
+	 */
+	public FactorGraph getWeightedGraphColouring(int nbrAgents, int nbrEdges, int nbrColours) {
+		return getWeightedGraphColouring(RandomGraphFactory.getSizedRandIntGraph(nbrAgents, nbrEdges, random),
+				nbrColours);
+	}
+
+	/**
+	 * Generates a weighted graph colouring problem on a given constraint graph,
+	 * e.g. a scale-free or small-world one.
+	 *
+	 * @param graph      the constraint graph, whose nodes are the agents
+	 * @param nbrColours the number of colours
+	 * @return the factor graph
+	 * @throws IllegalArgumentException if an agent has too many neighbours, that
+	 *                                  is, if nbrColours^(degree + 1) is larger
+	 *                                  than Integer.MAX_VALUE, as for the hubs of
+	 *                                  most scale-free graphs with thousands of
+	 *                                  nodes
+	 */
+	public FactorGraph getWeightedGraphColouring(IntGraph graph, int nbrColours) {
+		int maxDegree = graph.computeMaxDeg();
+		if (Math.pow(nbrColours, maxDegree + 1.0) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("an agent has " + maxDegree + " neighbours, so its function has "
+					+ nbrColours + "^" + (maxDegree + 1) + " joint assignments");
+
+		int nbrAgents = graph.nbrNodes;
+		int[] colours = getDomain(nbrColours);
+
+		Agent[] agents = new Agent[nbrAgents];
+		DecisionVariable[] variables = new DecisionVariable[nbrAgents];
+		for (int i = 0; i < nbrAgents; i++) {
+			variables[i] = new DecisionVariable(colours, "x" + i);
+			agents[i] = new Agent("a" + i, new DecisionVariable[] { variables[i] });
+		}
+
+		List<Function> functions = new ArrayList<Function>(nbrAgents);
+		for (int i = 0; i < nbrAgents; i++) {
+			if (graph.getDegree(i) == 0)
+				continue;
+
+			DecisionVariable[] scope = new DecisionVariable[graph.getDegree(i) + 1];
+			scope[0] = variables[i];
+			for (int k = graph.offsets[i]; k < graph.offsets[i + 1]; k++)
+				scope[k - graph.offsets[i] + 1] = variables[graph.adjacency[k]];
+
+			float[] preferences = new float[colours.length];
+			for (int c = 0; c < colours.length; c++)
+				preferences[c] = random.nextFloat() * 1e-6f;
+			functions.add(new WeightedGraphColouringFunction(scope, "F" + i, 0, preferences));
+		}
+
+		return getFactorGraph(agents, functions);
+	}
+
+	/**
+	 * Generates a random binary DCOP, whose variables are the nodes of a random
+	 * graph and whose constraints are its edges.
+	 *
+	 * @param nbrVariables   the number of variables, each owned by an agent
+	 * @param nbrConstraints the number of constraints
+	 * @param domainSize     the domain size of each variable
+	 * @param maxCost        costs are integers drawn uniformly in [0, maxCost]
+	 * @return the factor graph
+	 */
+	public FactorGraph getRandomBinaryDCOP(int nbrVariables, int nbrConstraints, int domainSize, int maxCost) {
+		return getRandomBinaryDCOP(RandomGraphFactory.getSizedRandIntGraph(nbrVariables, nbrConstraints, random),
+				domainSize, maxCost);
+	}
+
+	/**
+	 * Generates a random binary DCOP on a given constraint graph, e.g. a
+	 * scale-free or small-world one.
+	 *
+	 * @param graph      the constraint graph, whose nodes are the variables
+	 * @param domainSize the domain size of each variable
+	 * @param maxCost    costs are integers drawn uniformly in [0, maxCost]
+	 * @return the factor graph
+	 */
+	public FactorGraph getRandomBinaryDCOP(IntGraph graph, int domainSize, int maxCost) {
+		DecisionVariable[] variables = getVariables(graph.nbrNodes, domainSize);
+
+		List<Function> functions = new ArrayList<Function>(graph.getNbrEdges());
+		for (int i = 0; i < graph.getNbrEdges(); i++)
+			functions.add(getRandomFunction(
+					new DecisionVariable[] { variables[graph.sources[i]], variables[graph.dests[i]] }, "C" + i,
+					maxCost));
+
+		return getFactorGraph(getAgents(variables), functions);
+	}
+
+	/**
+	 * Generates a random DCOP whose constraints have the given arity. The scope
+	 * of each constraint is drawn uniformly among the sets of arity variables,
+	 * so two constraints may have the same scope.
+	 *
+	 * @param nbrVariables   the number of variables, each owned by an agent
+	 * @param nbrConstraints the number of constraints
+	 * @param arity          the arity of each constraint
+	 * @param domainSize     the domain size of each variable
+	 * @param maxCost        costs are integers drawn uniformly in [0, maxCost]
+	 * @return the factor graph
+	 */
+	public FactorGraph getRandomDCOP(int nbrVariables, int nbrConstraints, int arity, int domainSize, int maxCost) {
+		if (Checker.assertive)
+			Checker.check(arity > 0 && arity <= nbrVariables, "arity is not valid");
+
+		DecisionVariable[] variables = getVariables(nbrVariables, domainSize);
+
+		List<Function> functions = new ArrayList<Function>(nbrConstraints);
+		int[] scope = new int[arity];
+		for (int i = 0; i < nbrConstraints; i++) {
+			sample(nbrVariables, scope);
+			DecisionVariable[] decisionVariables = new DecisionVariable[arity];
+			for (int k = 0; k < arity; k++)
+				decisionVariables[k] = variables[scope[k]];
+			functions.add(getRandomFunction(decisionVariables, "C" + i, maxCost));
+		}
+
+		return getFactorGraph(getAgents(variables), functions);
+	}
+
+	/**
+	 * Generates a meeting scheduling problem in the PEAV formulation, as in
+	 * xcsp/MS_15_08_3_01.xml: each agent has a variable for the time slot of
+	 * each meeting it attends, the variables of the attendees of a meeting must
+	 * be equal, and the variables of an agent must be different.
+	 *
+	 * @param nbrAgents           the number of agents
+	 * @param nbrMeetings         the number of meetings
+	 * @param nbrAgentsPerMeeting the number of attendees of each meeting
+	 * @param nbrSlots            the number of time slots
+	 * @return the factor graph; agents attending no meeting are left out
+	 */
+	public FactorGraph getMeetingScheduling(int nbrAgents, int nbrMeetings, int nbrAgentsPerMeeting,
+			int nbrSlots) {
+		if (Checker.assertive)
+			Checker.check(nbrAgentsPerMeeting > 1 && nbrAgentsPerMeeting <= nbrAgents,
+					"number of agents per meeting is not valid");
+
+		int[] slots = getDomain(nbrSlots);
+
+		// hard constraints, shared by all the functions
+		float[] eq = new float[nbrSlots * nbrSlots], neq = new float[eq.length];
+		for (int s = 0; s < eq.length; s++) {
+			boolean diagonal = s / nbrSlots == s % nbrSlots;
+			eq[s] = diagonal ? 0 : Float.NEGATIVE_INFINITY;
+			neq[s] = diagonal ? Float.NEGATIVE_INFINITY : 0;
+		}
+		int[] sizes = new int[] { nbrSlots, nbrSlots };
+		UtilityTable eqTable = new UtilityTable(sizes, eq), neqTable = new UtilityTable(sizes, neq);
+
+		List<Function> functions = new ArrayList<Function>();
+		List<List<DecisionVariable>> owned = new ArrayList<List<DecisionVariable>>(nbrAgents);
+		for (int a = 0; a < nbrAgents; a++)
+			owned.add(new ArrayList<DecisionVariable>(2));
+
+		int[] attendees = new int[nbrAgentsPerMeeting];
+		DecisionVariable[] meeting = new DecisionVariable[nbrAgentsPerMeeting];
+		for (int m = 0; m < nbrMeetings; m++) {
+			sample(nbrAgents, attendees);
+			for (int k = 0; k < attendees.length; k++) {
+				meeting[k] = new DecisionVariable(slots, "m" + m + "a" + attendees[k]);
+				owned.get(attendees[k]).add(meeting[k]);
+			}
+			for (int k = 0; k < meeting.length; k++)
+				for (int l = k + 1; l < meeting.length; l++)
+					functions.add(new TableFunction(new DecisionVariable[] { meeting[k], meeting[l] },
+							meeting[k] + "_" + meeting[l], eqTable));
+		}
+
+		List<Agent> agents = new ArrayList<Agent>(nbrAgents);
+		for (int a = 0; a < nbrAgents; a++) {
+			List<DecisionVariable> variables = owned.get(a);
+			if (variables.isEmpty())
+				continue;
+			agents.add(new Agent("a" + a, variables.toArray(new DecisionVariable[variables.size()])));
+			for (int k = 0; k < variables.size(); k++)
+				for (int l = k + 1; l < variables.size(); l++)
+					functions.add(new TableFunction(new DecisionVariable[] { variables.get(k), variables.get(l) },
+							variables.get(k) + "_" + variables.get(l), neqTable));
+		}
+
+		return getFactorGraph(agents.toArray(new Agent[agents.size()]), functions);
+	}
+
+	private static int[] getDomain(int size) {
+		int[] domain = new int[size];
+		for (int d = 0; d < size; d++)
+			domain[d] = d + 1;
+		return domain;
+	}
+
+	private static DecisionVariable[] getVariables(int nbrVariables, int domainSize) {
+		int[] domain = getDomain(domainSize);
+		DecisionVariable[] variables = new DecisionVariable[nbrVariables];
+		for (int i = 0; i < nbrVariables; i++)
+			variables[i] = new DecisionVariable(domain, "x" + i);
+		return variables;
+	}
+
+	private static Agent[] getAgents(DecisionVariable[] variables) {
+		Agent[] agents = new Agent[variables.length];
+		for (int i = 0; i < agents.length; i++)
+			agents[i] = new Agent("a" + i, new DecisionVariable[] { variables[i] });
+		return agents;
+	}
+
+	// a function with a table of random costs, negated into utilities
+	private Function getRandomFunction(DecisionVariable[] scope, String id, int maxCost) {
+		int[] sizes = new int[scope.length];
+		for (int k = 0; k < sizes.length; k++)
+			sizes[k] = scope[k].getDomain().length;
+
+		float[] utilities = new float[UtilityTable.getSize(sizes)];
+		for (int t = 0; t < utilities.length; t++)
+			utilities[t] = -random.nextInt(maxCost + 1);
+
+		return new TableFunction(scope, id, new UtilityTable(sizes, utilities));
+	}
+
+	// fills sample with distinct ints in [0, n), drawn uniformly
+	private void sample(int n, int[] sample) {
+		for (int k = 0; k < sample.length; k++) {
+			int i;
+			do
+				i = random.nextInt(n);
+			while (contains(sample, k, i));
+			sample[k] = i;
+		}
+	}
+
+	private static boolean contains(int[] array, int length, int value) {
+		for (int k = 0; k < length; k++)
+			if (array[k] == value)
+				return true;
+		return false;
+	}
+
+	// builds the factor graph, then draws the initial value of each variable node
+	private FactorGraph getFactorGraph(Agent[] agents, List<Function> functions) {
+		FactorGraph graph = new FactorGraph(agents, functions.toArray(new Function[functions.size()]));
+		for (VariableNode vn : graph.getVariableNodes()) {
+			int[] domain = vn.getDecisionVariable().getDomain();
+			vn.setX(domain[random.nextInt(domain.length)]);
+		}
+		return graph;
+	}
+
+}
@@ -0,0 +1,198 @@
+package toolkit;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered little-endian output to a FileChannel, with the strings and arrays
+ * 4-byte aligned so that they can be read back from a memory-mapped file with
+ * getString() and getInts().
+ *
+ * @author Luca CPZ
+ */
+public class BinaryWriter {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+	private long position;
+
+	public BinaryWriter(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * The content of a file, written with a BinaryWriter.
+	 */
+	public interface Content {
+		void writeTo(BinaryWriter out) throws IOException;
+	}
+
+	/**
+	 * Writes a file atomically: content is written to a temporary file in the same
+	 * directory, which then replaces file, so that readers never see a partial
+	 * file and a failed write leaves the previous one in place.
+	 *
+	 * @param file    the output file
+	 * @param content writes the content of file
+	 * @throws IOException if file cannot be written
+	 */
+	public static void write(Path file, Content content) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				BinaryWriter out = new BinaryWriter(channel);
+				content.writeTo(out);
+				out.flush();
+				channel.force(false);
+			}
+			try {
+				Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			flush();
+	}
+
+	/**
+	 * Write the buffered bytes to the channel.
+	 *
+	 * @throws IOException if the channel cannot be written
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	public void putInt(int i) throws IOException {
+		ensure(4);
+		buffer.putInt(i);
+		position += 4;
+	}
+
+	public void putLong(long l) throws IOException {
+		ensure(8);
+		buffer.putLong(l);
+		position += 8;
+	}
+
+	public void putFloat(float f) throws IOException {
+		ensure(4);
+		buffer.putFloat(f);
+		position += 4;
+	}
+
+	public void put(byte[] bytes) throws IOException {
+		for (int i = 0; i < bytes.length; i += buffer.capacity()) {
+			int n = Math.min(buffer.capacity(), bytes.length - i);
+			ensure(n);
+			buffer.put(bytes, i, n);
+		}
+		position += bytes.length;
+	}
+
+	/** Writes the length and UTF-8 bytes of s, padded to 4 bytes */
+	public void putString(String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		putInt(bytes.length);
+		put(bytes);
+		put(new byte[(int) (-position & 3)]);
+	}
+
+	/** Writes the length and elements of ints */
+	public void putInts(int[] ints) throws IOException {
+		putInt(ints.length);
+		for (int i : ints)
+			putInt(i);
+	}
+
+	/** Writes the remaining floats of floats, in bulk */
+	public void putFloats(FloatBuffer floats) throws IOException {
+		while (floats.hasRemaining()) {
+			ensure(4);
+			int n = Math.min(floats.remaining(), buffer.remaining() / 4);
+			FloatBuffer chunk = floats.duplicate();
+			chunk.limit(chunk.position() + n);
+			buffer.asFloatBuffer().put(chunk);
+			buffer.position(buffer.position() + n * 4);
+			floats.position(floats.position() + n);
+			position += n * 4;
+		}
+	}
+
+	/** Writes floats[offset, offset + length), in bulk */
+	public void putFloats(float[] floats, int offset, int length) throws IOException {
+		putFloats(FloatBuffer.wrap(floats, offset, length));
+	}
+
+	/**
+	 * @param in a little-endian buffer positioned on a string written by
+	 *           putString()
+	 * @return the string; in is positioned after its padding
+	 */
+	public static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[getLength(in, 1)];
+		in.get(bytes);
+		in.position((in.position() + 3) & ~3);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param in a little-endian buffer positioned on an array written by
+	 *           putInts()
+	 * @return the array; in is positioned after it
+	 */
+	public static int[] getInts(ByteBuffer in) {
+		int[] ints = new int[getLength(in, 4)];
+		in.asIntBuffer().get(ints);
+		in.position(in.position() + ints.length * 4);
+		return ints;
+	}
+
+	/**
+	 * Reads the number of elements of an array, which must fit in the rest of in,
+	 * so that a corrupt length fails before anything is allocated.
+	 *
+	 * @param in          a little-endian buffer positioned on a length
+	 * @param elementSize the number of bytes of each element
+	 * @return the length; in is positioned after it
+	 * @throws BufferUnderflowException if the length is negative or exceeds the
+	 *                                  remaining bytes
+	 */
+	public static int getLength(ByteBuffer in, int elementSize) {
+		int n = in.getInt();
+		if (n < 0 || (long) n * elementSize > in.remaining())
+			throw new BufferUnderflowException();
+		return n;
+	}
+
+	/**
+	 * @param in     a little-endian buffer positioned on floats
+	 * @param floats receives the next floats[offset, offset + length); in is
+	 *               positioned after them
+	 */
+	public static void getFloats(ByteBuffer in, float[] floats, int offset, int length) {
+		in.asFloatBuffer().get(floats, offset, length);
+		in.position(in.position() + length * 4);
+	}
+
+}
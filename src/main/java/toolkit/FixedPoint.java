@@ -0,0 +1,90 @@
+package toolkit;
+
+/**
+ * Fixed-point utilities and messages, as ints scaled by 2^fractionBits.
+ *
+ * Integer.MIN_VALUE is reserved for -infinity, and sums saturate at the other
+ * ints instead of overflowing. Sums of many terms should be accumulated in a
+ * long and saturated once, so that they do not depend on the order of the
+ * terms; finite() and select() let such loops skip -infinity without
+ * branching.
+ *
+ * @author Luca CPZ
+ */
+public class FixedPoint {
+
+	/** The sentinel of -infinity */
+	public static final int NEGATIVE_INFINITY = Integer.MIN_VALUE;
+
+	/** Smallest and largest finite values */
+	public static final int MIN_VALUE = Integer.MIN_VALUE + 1, MAX_VALUE = Integer.MAX_VALUE;
+
+	/**
+	 * Largest number of fractional bits; toFloat is exact for values of up to
+	 * 24 significant bits
+	 */
+	public static final int MAX_FRACTION_BITS = 24;
+
+	/**
+	 * @param u            a utility
+	 * @param fractionBits the number of fractional bits
+	 * @return u rounded to the nearest multiple of 2^-fractionBits, saturated
+	 */
+	public static int quantise(float u, int fractionBits) {
+		if (u == Float.NEGATIVE_INFINITY)
+			return NEGATIVE_INFINITY;
+		return saturate(Math.round((double) Math.scalb(u, fractionBits)));
+	}
+
+	/**
+	 * @param q            a fixed-point value
+	 * @param fractionBits the number of fractional bits
+	 * @return the utility of q
+	 */
+	public static float toFloat(int q, int fractionBits) {
+		return q == NEGATIVE_INFINITY ? Float.NEGATIVE_INFINITY : Math.scalb((float) q, -fractionBits);
+	}
+
+	/**
+	 * @param sum a sum of finite fixed-point values
+	 * @return sum clamped to the finite fixed-point values
+	 */
+	public static int saturate(long sum) {
+		return (int) Math.max(MIN_VALUE, Math.min(MAX_VALUE, sum));
+	}
+
+	/**
+	 * @param q a fixed-point value
+	 * @return 1 if q is finite, 0 if it is -infinity, computed without branching
+	 */
+	public static int finite(int q) {
+		int d = q ^ NEGATIVE_INFINITY;
+		return (d | -d) >>> 31;
+	}
+
+	/**
+	 * @param finite 1 or 0, e.g. the disjunction of finite() of the terms of sum
+	 * @param sum    a sum of finite fixed-point values
+	 * @return saturate(sum) if finite is 1, -infinity if it is 0, computed without
+	 *         branching
+	 */
+	public static int select(int finite, long sum) {
+		return saturate(sum) & -finite | NEGATIVE_INFINITY & finite - 1;
+	}
+
+	/**
+	 * Same as Utils.checkedSum: -infinity is ignored, unless both terms are.
+	 *
+	 * @param a a fixed-point value
+	 * @param b a fixed-point value
+	 * @return the saturated sum of a and b
+	 */
+	public static int checkedSum(int a, int b) {
+		if (a == NEGATIVE_INFINITY)
+			return b;
+		if (b == NEGATIVE_INFINITY)
+			return a;
+		return saturate((long) a + b);
+	}
+
+}
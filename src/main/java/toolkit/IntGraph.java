@@ -0,0 +1,187 @@
+package toolkit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import toolkit.RandomGraphFactory.Edge;
+import toolkit.RandomGraphFactory.Graph;
+
+/**
+ * An undirected graph whose nodes are the ints from 0 to nbrNodes - 1.
+ *
+ * Edges are stored as two parallel arrays, neighbourhoods as adjacency arrays
+ * (the neighbours of node n are adjacency[offsets[n], offsets[n + 1])), and
+ * connected components are computed with union-find, so that graphs with
+ * millions of nodes can be built and queried without boxing.
+ *
+ * @author Luca CPZ
+ */
+public class IntGraph {
+
+	/** Number of nodes */
+	public final int nbrNodes;
+
+	/** Source and destination node of each edge */
+	public final int[] sources, dests;
+
+	/** Adjacency arrays of the nodes */
+	public final int[] offsets, adjacency;
+
+	/** For each node, the index of its connected component */
+	public final int[] componentOf;
+
+	/** Number of connected components */
+	public final int nbrComponents;
+
+	/**
+	 * @param nbrNodes number of nodes
+	 * @param sources  source node of each edge
+	 * @param dests    destination node of each edge
+	 */
+	public IntGraph(int nbrNodes, int[] sources, int[] dests) {
+		if (Checker.assertive)
+			Checker.check(sources.length == dests.length, "sources and dests arrays have different lengths");
+
+		this.nbrNodes = nbrNodes;
+		this.sources = sources;
+		this.dests = dests;
+
+		// adjacency arrays, by counting sort of the edge endpoints
+		offsets = new int[nbrNodes + 1];
+		for (int i = 0; i < sources.length; i++) {
+			offsets[sources[i] + 1]++;
+			offsets[dests[i] + 1]++;
+		}
+		for (int n = 0; n < nbrNodes; n++)
+			offsets[n + 1] += offsets[n];
+		adjacency = new int[offsets[nbrNodes]];
+		int[] next = new int[nbrNodes];
+		for (int i = 0; i < sources.length; i++) {
+			adjacency[offsets[sources[i]] + next[sources[i]]++] = dests[i];
+			adjacency[offsets[dests[i]] + next[dests[i]]++] = sources[i];
+		}
+
+		// union-find with path halving and union by size
+		int[] parent = new int[nbrNodes], size = next;
+		for (int n = 0; n < nbrNodes; n++) {
+			parent[n] = n;
+			size[n] = 1;
+		}
+		for (int i = 0; i < sources.length; i++) {
+			int a = find(parent, sources[i]), b = find(parent, dests[i]);
+			if (a == b)
+				continue;
+			if (size[a] < size[b]) {
+				int t = a;
+				a = b;
+				b = t;
+			}
+			parent[b] = a;
+			size[a] += size[b];
+		}
+
+		// components are numbered in order of their smallest node
+		componentOf = new int[nbrNodes];
+		Arrays.fill(componentOf, -1);
+		int c = 0;
+		for (int n = 0; n < nbrNodes; n++) {
+			int root = find(parent, n);
+			if (componentOf[root] < 0)
+				componentOf[root] = c++;
+			componentOf[n] = componentOf[root];
+		}
+		nbrComponents = c;
+	}
+
+	private static int find(int[] parent, int n) {
+		while (parent[n] != n)
+			n = parent[n] = parent[parent[n]];
+		return n;
+	}
+
+	/** @return the number of edges */
+	public int getNbrEdges() {
+		return sources.length;
+	}
+
+	/**
+	 * @param node a node
+	 * @return the number of neighbours of node
+	 */
+	public int getDegree(int node) {
+		return offsets[node + 1] - offsets[node];
+	}
+
+	/** @return the highest degree of any given node */
+	public int computeMaxDeg() {
+		int maxDeg = 0;
+		for (int n = 0; n < nbrNodes; n++)
+			maxDeg = Math.max(maxDeg, getDegree(n));
+		return maxDeg;
+	}
+
+	/**
+	 * @return the p1 density, computed as the number of edges divided by the
+	 *         maximum possible number of edges
+	 */
+	public double computeDensity() {
+		if (nbrNodes <= 1)
+			return 0.0;
+		return sources.length / (nbrNodes * (nbrNodes - 1.0) / 2.0);
+	}
+
+	/**
+	 * @return a Graph whose nodes are named by Integer.toString(), without
+	 *         clusters
+	 */
+	public Graph toGraph() {
+		return toGraph(null, 0);
+	}
+
+	/**
+	 * @param clusterOf   the cluster of each node, or null
+	 * @param nbrClusters the number of clusters
+	 * @return a Graph whose nodes are named by Integer.toString()
+	 */
+	public Graph toGraph(int[] clusterOf, int nbrClusters) {
+		String[] names = new String[nbrNodes];
+		List<String> nodes = new ArrayList<String>(nbrNodes);
+		for (int n = 0; n < nbrNodes; n++)
+			nodes.add(names[n] = Integer.toString(n));
+
+		Edge[] edges = new Edge[sources.length];
+		for (int i = 0; i < edges.length; i++)
+			edges[i] = new Edge(names[sources[i]], names[dests[i]]);
+
+		List<List<String>> components = new ArrayList<List<String>>(nbrComponents);
+		for (int c = 0; c < nbrComponents; c++)
+			components.add(new ArrayList<String>());
+		for (int n = 0; n < nbrNodes; n++)
+			components.get(componentOf[n]).add(names[n]);
+
+		Map<String, Set<String>> neighbourhoods = new HashMap<String, Set<String>>(nbrNodes * 2);
+		for (int n = 0; n < nbrNodes; n++) {
+			Set<String> neighbours = new HashSet<String>(getDegree(n) * 2);
+			for (int i = offsets[n]; i < offsets[n + 1]; i++)
+				neighbours.add(names[adjacency[i]]);
+			neighbourhoods.put(names[n], neighbours);
+		}
+
+		List<List<String>> clusters = null;
+		if (clusterOf != null) {
+			clusters = new ArrayList<List<String>>(nbrClusters);
+			for (int c = 0; c < nbrClusters; c++)
+				clusters.add(new ArrayList<String>());
+			for (int n = 0; n < nbrNodes; n++)
+				clusters.get(clusterOf[n]).add(names[n]);
+		}
+
+		return new Graph(nodes, edges, components, neighbourhoods, clusters);
+	}
+
+}
@@ -0,0 +1,98 @@
+package toolkit;
+
+import java.util.Arrays;
+
+/**
+ * A set of longs with open addressing and linear probing, which does not box
+ * its elements.
+ *
+ * @author Luca CPZ
+ */
+public class LongHashSet {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] keys;
+	private int size;
+	private boolean containsEmpty; // whether EMPTY itself is in the set
+
+	/**
+	 * @param expectedSize the number of elements that can be added without
+	 *                     resizing
+	 */
+	public LongHashSet(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	private static int hash(long key) {
+		key *= 0x9e3779b97f4a7c15L; // Fibonacci hashing
+		return (int) (key ^ (key >>> 32));
+	}
+
+	/**
+	 * @param key a long
+	 * @return true if key was not in the set
+	 */
+	public boolean add(long key) {
+		if (key == EMPTY) {
+			if (containsEmpty)
+				return false;
+			containsEmpty = true;
+			size++;
+			return true;
+		}
+
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key)
+				return false;
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+
+		if (++size * 2 > keys.length)
+			rehash();
+		return true;
+	}
+
+	/**
+	 * @param key a long
+	 * @return true if key is in the set
+	 */
+	public boolean contains(long key) {
+		if (key == EMPTY)
+			return containsEmpty;
+
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key)
+				return true;
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void rehash() {
+		long[] old = keys;
+		keys = new long[old.length * 2];
+		Arrays.fill(keys, EMPTY);
+
+		int mask = keys.length - 1;
+		for (long key : old)
+			if (key != EMPTY) {
+				int i = hash(key) & mask;
+				while (keys[i] != EMPTY)
+					i = (i + 1) & mask;
+				keys[i] = key;
+			}
+	}
+
+}
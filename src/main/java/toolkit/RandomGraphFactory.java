@@ -193,85 +193,242 @@ public class RandomGraphFactory {
 	 * @return a random graph
 	 */
 	public static Graph getSizedRandGraph(int nbrNodes, int nbrEdges, int nbrClusters) {
+		Random rand = new Random();
+		IntGraph graph = getSizedRandIntGraph(nbrNodes, nbrEdges, rand);
+
+		// Create the clusters
+		if (nbrClusters == 0) // we don't want any cluster
+			return graph.toGraph();
+		else {
+			// Randomly assign nodes to clusters
+			int[] clusterOf = new int[nbrNodes];
+			for (int i = 0; i < nbrNodes; i++)
+				clusterOf[i] = rand.nextInt(nbrClusters);
+			return graph.toGraph(clusterOf, nbrClusters);
+		}
+	}
+
+	/**
+	 * Creates a random graph with the desired size, on primitive node ids
+	 *
+	 * There can be only at most 1 edge between any two given nodes. Duplicate
+	 * edges are rejected with a hash set of the edges, so that the generation
+	 * takes expected linear time as long as the graph is not close to complete.
+	 *
+	 * @param nbrNodes number of nodes
+	 * @param nbrEdges number of edges
+	 * @param rand     the source of randomness
+	 * @return a random graph
+	 */
+	public static IntGraph getSizedRandIntGraph(int nbrNodes, int nbrEdges, Random rand) {
 
 		assert nbrNodes > 1;
 
 		// Check that we are not asked for too many edges
-		int maxNbrEdges = nbrNodes * (nbrNodes - 1) / 2;
+		long maxNbrEdges = nbrNodes * (nbrNodes - 1L) / 2;
 		if (nbrEdges > maxNbrEdges) {
 			System.err.println("Cannot create a graph with " + nbrEdges + " edges and only " + nbrNodes
 					+ " nodes; truncating to " + maxNbrEdges + " edges");
-			nbrEdges = maxNbrEdges;
+			nbrEdges = (int) maxNbrEdges;
 		}
 
-		// Create the nodes
-		List<String> nodes = new ArrayList<String>(nbrNodes);
-		for (int i = 0; i < nbrNodes; i++)
-			nodes.add(Integer.toString(i));
+		// Generate random edges
+		int[] sources = new int[nbrEdges], dests = new int[nbrEdges];
+		LongHashSet edges = new LongHashSet(nbrEdges);
+		for (int i = 0; i < nbrEdges; i++) {
+			// Pick two nodes at random, for which an edge does not exist yet
+			int i1, i2;
+			do {
+				i1 = rand.nextInt(nbrNodes - 1);
+				i2 = i1 + rand.nextInt(nbrNodes - i1 - 1) + 1;
+			} while (!edges.add((long) i1 * nbrNodes + i2));
 
-		// Keep track of the connected components of the graph; initially one component
-		// per node
-		List<List<String>> components = new ArrayList<List<String>>(nbrNodes);
-		Map<String, List<String>> componentOf = new HashMap<String, List<String>>(nbrNodes);
-		for (String node : nodes) {
-			List<String> component = new ArrayList<String>();
-			component.add(node);
-			components.add(component);
-			componentOf.put(node, component);
+			sources[i] = i1;
+			dests[i] = i2;
 		}
 
-		// Keep track of neighbour relationships
-		Map<String, Set<String>> neighbours = new HashMap<String, Set<String>>(nbrNodes);
-		for (String node : nodes)
-			neighbours.put(node, new HashSet<String>());
+		return new IntGraph(nbrNodes, sources, dests);
+	}
 
-		// Generate random edges
-		Edge[] edges = new Edge[nbrEdges];
-		for (int i = 0; i < nbrEdges; i++) {
-			// Pick two nodes at random, for which an edge does not exist yet
-			int i1 = 0, i2 = 0;
-			String i1Name = "0", i2Name = "0";
-			boolean newEdge = false;
-			while (!newEdge) {
-				newEdge = true;
-				i1 = (int) (Math.random() * (nbrNodes - 1));
-				i1Name = Integer.toString(i1);
-				i2 = i1 + (int) (Math.random() * (nbrNodes - i1 - 1)) + 1;
-				i2Name = Integer.toString(i2);
-				for (int j = 0; j < i; j++)
-					if (edges[j].source.equals(i1Name) && edges[j].dest.equals(i2Name))
-						newEdge = false;
+	/**
+	 * Creates a scale-free graph by Barabasi-Albert preferential attachment
+	 *
+	 * The graph starts as a clique of nbrEdgesPerNode + 1 nodes; then each new
+	 * node is linked to nbrEdgesPerNode distinct existing nodes, each chosen with
+	 * probability proportional to its degree. Nodes are drawn from the array of
+	 * all edge endpoints, so that each choice takes constant time.
+	 *
+	 * @param nbrNodes        number of nodes
+	 * @param nbrEdgesPerNode number of edges added with each new node
+	 * @param rand            the source of randomness
+	 * @return a connected graph with a power-law degree distribution
+	 * @throws IllegalArgumentException if nbrEdgesPerNode is not in [1,
+	 *                                  nbrNodes) or the graph is too large
+	 */
+	public static IntGraph getScaleFreeIntGraph(int nbrNodes, int nbrEdgesPerNode, Random rand) {
+		if (nbrEdgesPerNode < 1 || nbrEdgesPerNode >= nbrNodes)
+			throw new IllegalArgumentException(
+					"cannot add " + nbrEdgesPerNode + " edges per node to a graph of " + nbrNodes + " nodes");
+
+		int m = nbrEdgesPerNode;
+		long nbrEdges = m * (m + 1L) / 2 + (long) (nbrNodes - m - 1) * m;
+		if (nbrEdges > Integer.MAX_VALUE / 2)
+			throw new IllegalArgumentException("a graph of " + nbrEdges + " edges is too large");
+
+		int[] sources = new int[(int) nbrEdges], dests = new int[(int) nbrEdges];
+		int[] endpoints = new int[(int) (2 * nbrEdges)];
+		int e = 0;
+
+		// The initial clique
+		for (int i = 0; i <= m; i++)
+			for (int j = i + 1; j <= m; j++) {
+				sources[e] = i;
+				dests[e] = j;
+				endpoints[2 * e] = i;
+				endpoints[2 * e + 1] = j;
+				e++;
 			}
 
-			// Create the edge
-			edges[i] = new Edge(i1Name, i2Name);
-			neighbours.get(i2Name).add(i1Name);
-			neighbours.get(i1Name).add(i2Name);
-
-			// Recompute the connected components of the graph
-			List<String> component1 = componentOf.get(i1Name);
-			List<String> component2 = componentOf.get(i2Name);
-			if (component1 != component2) {
-				component1.addAll(component2);
-				components.remove(component2);
-				for (String node : nodes)
-					if (componentOf.get(node) == component2)
-						componentOf.put(node, component1);
+		// Preferential attachment
+		int[] targets = new int[m];
+		for (int n = m + 1; n < nbrNodes; n++) {
+			int nbrEndpoints = 2 * e;
+			for (int k = 0; k < m; k++) {
+				int t;
+				do
+					t = endpoints[rand.nextInt(nbrEndpoints)];
+				while (contains(targets, k, t));
+				targets[k] = t;
+			}
+			for (int k = 0; k < m; k++) {
+				sources[e] = targets[k];
+				dests[e] = n;
+				endpoints[2 * e] = targets[k];
+				endpoints[2 * e + 1] = n;
+				e++;
 			}
 		}
 
-		// Create the clusters
-		if (nbrClusters == 0) // we don't want any cluster
-			return new Graph(nodes, edges, components, neighbours, null);
-		else {
-			// Randomly assign nodes to clusters
-			List<List<String>> clusters = new ArrayList<List<String>>(nbrClusters);
-			for (int i = 0; i < nbrClusters; i++)
-				clusters.add(new ArrayList<String>());
-			for (int i = 0; i < nbrNodes; i++)
-				clusters.get((int) (Math.random() * nbrClusters)).add(Integer.toString(i));
-			return new Graph(nodes, edges, components, neighbours, clusters);
+		return new IntGraph(nbrNodes, sources, dests);
+	}
+
+	private static boolean contains(int[] array, int length, int value) {
+		for (int k = 0; k < length; k++)
+			if (array[k] == value)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Creates a small-world graph by Watts-Strogatz rewiring
+	 *
+	 * The graph starts as a ring in which each node is linked to its
+	 * nbrNeighbours / 2 nearest nodes on each side; then the far end of each edge
+	 * is rewired with probability rewiringProb to a node drawn uniformly, as long
+	 * as this does not create a loop or a duplicate edge. An edge that has been
+	 * rewired away is not created again.
+	 *
+	 * @param nbrNodes      number of nodes
+	 * @param nbrNeighbours the (even) degree of each node in the initial ring
+	 * @param rewiringProb  the probability of rewiring each edge
+	 * @param rand          the source of randomness
+	 * @return a graph with nbrNodes * nbrNeighbours / 2 edges
+	 * @throws IllegalArgumentException if nbrNeighbours is not even and in [2,
+	 *                                  nbrNodes - 1), rewiringProb is not a
+	 *                                  probability or the graph is too large
+	 */
+	public static IntGraph getSmallWorldIntGraph(int nbrNodes, int nbrNeighbours, double rewiringProb,
+			Random rand) {
+		if (nbrNeighbours < 2 || nbrNeighbours % 2 != 0 || nbrNeighbours >= nbrNodes - 1)
+			throw new IllegalArgumentException(
+					"cannot link each of " + nbrNodes + " nodes to " + nbrNeighbours + " neighbours in a ring");
+		if (!(rewiringProb >= 0 && rewiringProb <= 1))
+			throw new IllegalArgumentException("rewiring probability " + rewiringProb + " is not in [0, 1]");
+
+		int half = nbrNeighbours / 2;
+		if ((long) nbrNodes * half > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("a graph of " + (long) nbrNodes * half + " edges is too large");
+		int nbrEdges = nbrNodes * half;
+		int[] sources = new int[nbrEdges], dests = new int[nbrEdges];
+		LongHashSet edges = new LongHashSet(nbrEdges);
+
+		// The initial ring lattice
+		int e = 0;
+		for (int j = 1; j <= half; j++)
+			for (int i = 0; i < nbrNodes; i++) {
+				sources[e] = i;
+				dests[e] = (i + j) % nbrNodes;
+				edges.add(getEdgeKey(i, dests[e], nbrNodes));
+				e++;
+			}
+
+		// Rewiring, one lattice distance at a time as in the original model
+		for (e = 0; e < nbrEdges; e++) {
+			if (rand.nextDouble() >= rewiringProb)
+				continue;
+
+			int i = sources[e], w = rand.nextInt(nbrNodes);
+			if (w != i && edges.add(getEdgeKey(i, w, nbrNodes)))
+				dests[e] = w;
 		}
+
+		return new IntGraph(nbrNodes, sources, dests);
+	}
+
+	private static long getEdgeKey(int i1, int i2, int nbrNodes) {
+		return i1 < i2 ? (long) i1 * nbrNodes + i2 : (long) i2 * nbrNodes + i1;
+	}
+
+	/**
+	 * Generates a k-dimensional torus, that is, a grid whose sides wrap around
+	 *
+	 * Node ids are the mixed-radix numbers of the coordinates of the nodes, the
+	 * first dimension varying fastest. A dimension of side 2 adds a single edge
+	 * per pair of nodes, and a dimension of side 1 adds none.
+	 *
+	 * @param sides the number of nodes along each dimension
+	 * @return the graph, in which each node has degree up to 2 * sides.length
+	 * @throws IllegalArgumentException if there are no sides, a side is not
+	 *                                  positive or the graph is too large
+	 */
+	public static IntGraph getTorusIntGraph(int... sides) {
+		if (sides.length == 0)
+			throw new IllegalArgumentException("a torus has at least one dimension");
+		long size = 1;
+		for (int side : sides) {
+			if (side < 1)
+				throw new IllegalArgumentException("side " + side + " is not positive");
+			size *= side;
+			if (size > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("a torus of sides " + Arrays.toString(sides) + " is too large");
+		}
+		int nbrNodes = (int) size;
+
+		// Count the edges along each dimension
+		long nbrEdges = 0;
+		for (int side : sides)
+			if (side > 2)
+				nbrEdges += nbrNodes;
+			else if (side == 2)
+				nbrEdges += nbrNodes / 2;
+		if (nbrEdges > Integer.MAX_VALUE / 2)
+			throw new IllegalArgumentException("a graph of " + nbrEdges + " edges is too large");
+
+		int[] sources = new int[(int) nbrEdges], dests = new int[(int) nbrEdges];
+		int e = 0, stride = 1;
+		for (int side : sides) {
+			for (int n = 0; n < nbrNodes; n++) {
+				int coordinate = (n / stride) % side;
+				if (side > 2 || (side == 2 && coordinate == 0)) {
+					sources[e] = n;
+					dests[e] = n + ((coordinate + 1) % side - coordinate) * stride;
+					e++;
+				}
+			}
+			stride *= side;
+		}
+
+		return new IntGraph(nbrNodes, sources, dests);
 	}
 
 	/**
@@ -13,6 +13,13 @@ public class Utils {
 		return l;
 	}
 
+	public static int[] toIntArray(Number[] array) {
+		int[] a = new int[array.length];
+		for (int i = 0; i < array.length; i++)
+			a[i] = array[i].intValue();
+		return a;
+	}
+
 	public static HashMap<Integer, Float> getZeroMessages(int[] domain) {
 		HashMap<Integer, Float> map = new HashMap<Integer, Float>();
 		for (int d : domain)
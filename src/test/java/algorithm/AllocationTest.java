@@ -0,0 +1,209 @@
+package algorithm;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dcop.Agent;
+import dcop.DecisionVariable;
+import dcop.Function;
+import factorgraph.FactorGraph;
+import factorgraph.FunctionNode;
+import factorgraph.VariableNode;
+import function.SparseTable;
+import function.SparseTableFunction;
+import problem.InstanceGenerator;
+
+@DisplayName("testing the allocations of the message-passing hot path")
+public class AllocationTest {
+
+	/*
+	 * Bytes allocated per message, above which a test fails. Steady-state
+	 * iterations should allocate nothing: these budgets are the current costs,
+	 * and are to be lowered as the hot path is made garbage-free, down to 0. The
+	 * build runs this class with -Xint (see the allocationTest task), so that
+	 * escape analysis does not remove allocations and the measures are exact.
+	 */
+	static final double R_BUDGET = 450;
+	static final double Q_BUDGET = 400;
+	static final double ZX_BUDGET = 1000;
+	static final double SYNCHRONOUS_BUDGET = 500;
+	static final double ASYNCHRONOUS_BUDGET = 850;
+
+	// fixed-point messages are stored in preallocated arrays
+	static final double FIXED_POINT_R_BUDGET = 0;
+	static final double FIXED_POINT_Q_BUDGET = 0;
+
+	// sparse kernels reuse their buffers, so only the boxed float R messages allocate
+	static final double SPARSE_R_BUDGET = 200;
+	static final double FIXED_POINT_SPARSE_R_BUDGET = 0;
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	private static long getAllocatedBytes(Thread thread) {
+		return THREADS.getThreadAllocatedBytes(thread.getId());
+	}
+
+	// bytes allocated by each call of kernel, once its classes are loaded
+	private static double measure(Runnable kernel) {
+		for (int i = 0; i < 100; i++)
+			kernel.run();
+
+		int n = 2000;
+		long bytes = getAllocatedBytes(Thread.currentThread());
+		for (int i = 0; i < n; i++)
+			kernel.run();
+		return (getAllocatedBytes(Thread.currentThread()) - bytes) / (double) n;
+	}
+
+	private static FactorGraph getGraph() {
+		return new InstanceGenerator(1).getRandomBinaryDCOP(50, 100, 5, 10);
+	}
+
+	// a ternary sparse function, whose best unlisted assignments are behind 9 listed ones for each target value
+	private static FactorGraph getSparseGraph() {
+		int[] domain = new int[10];
+		for (int j = 0; j < domain.length; j++)
+			domain[j] = j;
+		DecisionVariable[] variables = new DecisionVariable[3];
+		for (int i = 0; i < variables.length; i++)
+			variables[i] = new DecisionVariable(domain, "x" + i);
+
+		int n = 0;
+		int[] indices = new int[3 * 90];
+		float[] utilities = new float[90];
+		for (int a = 0; a < 10; a++)
+			for (int b = 0; b < 3; b++)
+				for (int c = 0; c < 3; c++) {
+					indices[3 * n] = a;
+					indices[3 * n + 1] = b;
+					indices[3 * n + 2] = c;
+					utilities[n++] = a + b + c;
+				}
+		SparseTable table = new SparseTable(new int[] { 10, 10, 10 }, indices, utilities, -1);
+		return new FactorGraph(new Agent[] { new Agent("A", variables) },
+				new Function[] { new SparseTableFunction(variables, "C0", table) });
+	}
+
+	private static MaxSum getMaxSum(int iterations) {
+		MaxSum maxSum = new MaxSum(getGraph());
+		maxSum.setTracing(false);
+		maxSum.setIterationsNumber(iterations);
+		maxSum.setConvergenceNumber(Integer.MAX_VALUE); // no early stopping
+		return maxSum;
+	}
+
+	// bytes allocated by an execution of iterations iterations, and its messages
+	private static long[] run(int iterations, boolean synchronous) throws InterruptedException {
+		MaxSum maxSum = getMaxSum(iterations);
+		if (synchronous) {
+			long bytes = getAllocatedBytes(Thread.currentThread());
+			maxSum.solveSynchronous();
+			return new long[] { getAllocatedBytes(Thread.currentThread()) - bytes, maxSum.getMessagesNumber() };
+		}
+
+		// the allocations of each thread of the pool, from its start to its end
+		AtomicLong bytes = new AtomicLong();
+		List<Thread> threads = new ArrayList<Thread>();
+		maxSum.threadFactory = r -> {
+			Thread t = Executors.defaultThreadFactory().newThread(() -> {
+				long b = getAllocatedBytes(Thread.currentThread());
+				r.run();
+				bytes.addAndGet(getAllocatedBytes(Thread.currentThread()) - b);
+			});
+			synchronized (threads) {
+				threads.add(t);
+			}
+			return t;
+		};
+		maxSum.solve();
+		for (Thread t : threads)
+			t.join();
+		return new long[] { bytes.get(), maxSum.getMessagesNumber() };
+	}
+
+	// bytes allocated per message by steady-state iterations of an engine
+	private static double measure(boolean synchronous) throws InterruptedException {
+		run(20, synchronous);
+
+		// the difference between two executions excludes their fixed costs
+		long[] a = run(20, synchronous), b = run(60, synchronous);
+		return Math.max(0, b[0] - a[0]) / (double) (b[1] - a[1]);
+	}
+
+	// nodes are picked by name, as their order in the graph is not deterministic
+	private static FunctionNode getFunctionNode(FactorGraph graph, String name) {
+		for (FunctionNode fn : graph.getFunctionNodes())
+			if (fn.toString().equals(name))
+				return fn;
+		return null;
+	}
+
+	@Test
+	@DisplayName("testing the allocations of the kernels")
+	void testKernels() {
+		FactorGraph graph = getGraph();
+		FunctionNode c0 = getFunctionNode(graph, "C0");
+		VariableNode vn = c0.getNeighbours()[0];
+		MaxSum maxSum = new MaxSum(graph);
+
+		double r = measure(() -> c0.sendRMessageTo(vn));
+		assertTrue(r <= R_BUDGET, "sendRMessageTo allocates " + r + " bytes per message");
+
+		double q = measure(() -> vn.sendQMessageTo(c0));
+		assertTrue(q <= Q_BUDGET, "sendQMessageTo allocates " + q + " bytes per message");
+
+		double zx = measure(() -> maxSum.computeZX(vn));
+		assertTrue(zx <= ZX_BUDGET, "computeZX allocates " + zx + " bytes per call");
+	}
+
+	@Test
+	@DisplayName("testing the allocations of the fixed-point kernels")
+	void testFixedPointKernels() {
+		FactorGraph graph = getGraph();
+		graph.setFixedPoint(8);
+		FunctionNode c0 = getFunctionNode(graph, "C0");
+		VariableNode vn = c0.getNeighbours()[0];
+
+		double r = measure(() -> c0.sendRMessageTo(vn));
+		assertTrue(r <= FIXED_POINT_R_BUDGET, "sendRMessageTo allocates " + r + " bytes per message");
+
+		double q = measure(() -> vn.sendQMessageTo(c0));
+		assertTrue(q <= FIXED_POINT_Q_BUDGET, "sendQMessageTo allocates " + q + " bytes per message");
+	}
+
+	@Test
+	@DisplayName("testing the allocations of the sparse kernels")
+	void testSparseKernels() {
+		FactorGraph graph = getSparseGraph();
+		FunctionNode c0 = getFunctionNode(graph, "C0");
+		VariableNode vn = c0.getNeighbours()[0];
+
+		double r = measure(() -> c0.sendRMessageTo(vn));
+		assertTrue(r <= SPARSE_R_BUDGET, "sendRMessageTo allocates " + r + " bytes per message");
+
+		graph.setFixedPoint(8);
+		r = measure(() -> c0.sendRMessageTo(vn));
+		assertTrue(r <= FIXED_POINT_SPARSE_R_BUDGET, "sendRMessageTo allocates " + r + " bytes per message");
+	}
+
+	@Test
+	@DisplayName("testing the allocations of the engines")
+	void testEngines() throws InterruptedException {
+		double synchronous = measure(true);
+		assertTrue(synchronous <= SYNCHRONOUS_BUDGET,
+				"solveSynchronous allocates " + synchronous + " bytes per message");
+
+		double asynchronous = measure(false);
+		assertTrue(asynchronous <= ASYNCHRONOUS_BUDGET, "solve allocates " + asynchronous + " bytes per message");
+	}
+
+}
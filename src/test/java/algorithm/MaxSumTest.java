@@ -1,10 +1,27 @@
 package algorithm;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -16,6 +33,8 @@ import factorgraph.FactorGraph;
 import factorgraph.FunctionNode;
 import factorgraph.VariableNode;
 import problem.GraphColouring;
+import problem.InstanceGenerator;
+import toolkit.FixedPoint;
 
 @DisplayName("testing MaxSum algorithm correctness")
 public class MaxSumTest {
@@ -87,4 +106,340 @@ public class MaxSumTest {
 	void test3() {
 		new MaxSum(graph).solve();
 	}
-}
\ No newline at end of file
+
+	@Test
+	@DisplayName("profiling Synchronous MaxSum on the created graph")
+	void test4() {
+		MaxSum maxSum = new MaxSum(graph);
+		maxSum.setTracing(false);
+		maxSum.setConvergenceNumber(1000);
+		maxSum.setIterationsNumber(7);
+		maxSum.setProfiling(true);
+		maxSum.solveSynchronous();
+
+		// each function node sends arity messages, and each variable node degree messages, per iteration
+		NodeProfiler profiler = maxSum.getProfiler();
+		long calls = 0;
+		for (FunctionNode fn : graph.getFunctionNodes()) {
+			assertEquals(7L * fn.getNeighbours().length, profiler.getFunctionCalls()[fn.getIndex()]);
+			calls += profiler.getFunctionCalls()[fn.getIndex()];
+		}
+		for (VariableNode vn : graph.getVariableNodes()) {
+			assertEquals(7L * vn.getNeighbours().size(), profiler.getVariableCalls()[vn.getIndex()]);
+			calls += profiler.getVariableCalls()[vn.getIndex()];
+		}
+		assertEquals(maxSum.getMessagesNumber(), calls);
+
+		// the most expensive nodes come first
+		long[] times = profiler.getFunctionTimes();
+		Integer[] top = NodeProfiler.top(times, times.length);
+		assertEquals(times.length, top.length);
+		for (int i = 1; i < top.length; i++)
+			assertTrue(times[top[i - 1]] >= times[top[i]]);
+		assertEquals(2, NodeProfiler.top(times, 2).length);
+		assertTrue(profiler.getReport(2).contains(graph.getFunctionNodes()[top[0]].toString()));
+	}
+
+	@Test
+	@DisplayName("tracking the best assignment of Synchronous MaxSum on the created graph")
+	void test5() {
+		MaxSum maxSum = new MaxSum(graph);
+		maxSum.setAnytime(1);
+		maxSum.solveSynchronous();
+
+		int[] best = maxSum.getBestAssignment();
+		assertEquals(graph.getVariableNodes().length, best.length);
+
+		// the best assignment is at least as good as the final one
+		float finalUtility = new AnytimeTracker(graph).update(0);
+		assertTrue(maxSum.getBestUtility() >= finalUtility);
+
+		// the asynchronous engine tracks once per round, not once per node iteration
+		maxSum.setIterationsNumber(20);
+		maxSum.solve();
+		assertTrue(maxSum.anytime.getBestIteration() <= 20);
+		assertTrue(maxSum.getBestUtility() >= new AnytimeTracker(graph).update(0));
+	}
+
+	@Test
+	@DisplayName("stopping Synchronous and Asynchronous MaxSum with a cancelled token")
+	void test6() {
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+
+		MaxSum maxSum = new MaxSum(graph);
+		maxSum.setCancellationToken(token);
+		maxSum.solveSynchronous();
+		assertTrue(maxSum.isStopped());
+		assertEquals(0, maxSum.getSolution().getIterations());
+		assertEquals(graph.getVariableNodes().length, maxSum.getSolution().getAssignment().length);
+
+		// a stopping criterion does not enable the best assignment tracking
+		assertEquals(null, maxSum.getBestAssignment());
+
+		maxSum.solve();
+		assertTrue(maxSum.isStopped());
+		assertEquals(0, maxSum.getSolution().getIterations());
+		assertEquals(graph.getVariableNodes().length, maxSum.getSolution().getAssignment().length);
+	}
+
+	@Test
+	@DisplayName("streaming the best assignments of Asynchronous MaxSum on the created graph")
+	void test7() throws InterruptedException {
+		MaxSum maxSum = new MaxSum(graph);
+		int[] assignment = new int[graph.getVariableNodes().length];
+		CountDownLatch last = new CountDownLatch(1);
+
+		maxSum.getPublisher().subscribe(new Flow.Subscriber<SolutionSnapshot>() {
+			private Flow.Subscription subscription;
+
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				this.subscription = subscription;
+				subscription.request(1);
+			}
+
+			@Override
+			public void onNext(SolutionSnapshot item) {
+				for (int i = 0; i < item.getVariables().length; i++)
+					assignment[item.getVariables()[i]] = item.getValues()[i];
+				if (item.isLast())
+					last.countDown();
+				subscription.request(1);
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		});
+
+		maxSum.solve();
+		assertTrue(last.await(10, TimeUnit.SECONDS));
+		assertArrayEquals(maxSum.getBestAssignment(), assignment);
+	}
+
+	@Test
+	@DisplayName("reading the solution of untraced Synchronous MaxSum on the created graph")
+	void test8() {
+		MaxSum maxSum = new MaxSum(graph);
+		maxSum.setTracing(false);
+		maxSum.solveSynchronous();
+
+		Solution solution = maxSum.getSolution();
+		assertEquals(graph.getVariableNodes().length, solution.getAssignment().length);
+		assertEquals(graph.evaluate(solution.getAssignment()), solution.getUtility());
+		assertTrue(solution.getIterations() > 0);
+		assertEquals(0, maxSum.getResults().length());
+	}
+
+	@Test
+	@DisplayName("sharing the tables of functions with the same domains")
+	void test9() {
+		FunctionNode f1 = null, f2 = null, f3 = null;
+		for (FunctionNode fn : graph.getFunctionNodes())
+			switch (fn.toString()) {
+			case "F1":
+				f1 = fn;
+				break;
+			case "F2":
+				f2 = fn;
+				break;
+			case "F3":
+				f3 = fn;
+				break;
+			}
+
+		assertSame(f1.getTable(), f3.getTable());
+		assertTrue(f1.getTable() != f2.getTable());
+		assertEquals(8, f2.getTable().size());
+		assertEquals(f2.evaluate(new Integer[] { 1, 2, 1 }), f2.getTable().get(2));
+	}
+
+	@Test
+	@DisplayName("resuming Synchronous MaxSum from a checkpoint on a new graph")
+	void test10() throws IOException {
+		FactorGraph graph = GraphColouring.getExample();
+		MaxSum maxSum = new MaxSum(graph);
+		maxSum.setTracing(false);
+		maxSum.setConvergenceNumber(1000);
+		maxSum.setIterationsNumber(3);
+		maxSum.solveSynchronous();
+
+		Path file = Files.createTempFile("MaxSum", ".bin");
+		file.toFile().deleteOnExit();
+		Checkpoint.save(maxSum, file);
+
+		FactorGraph copy = GraphColouring.getExample();
+		MaxSum resumed = new MaxSum(copy);
+		resumed.setTracing(false);
+		resumed.setConvergenceNumber(1000);
+		resumed.setIterationsNumber(8);
+		assertEquals(copy.getVariableNodes().length + copy.getFunctionNodes().length, Checkpoint.restore(resumed, file));
+
+		for (FunctionNode fn : copy.getFunctionNodes()) {
+			FunctionNode original = null;
+			for (FunctionNode other : graph.getFunctionNodes())
+				if (other.toString().equals(fn.toString()))
+					original = other;
+			for (int k = 0; k < fn.getNeighbours().length; k++) {
+				assertEquals(original.getR(original.getNeighbours()[k]), fn.getR(fn.getNeighbours()[k]));
+				assertEquals(original.getNeighbours()[k].getQ(original), fn.getNeighbours()[k].getQ(fn));
+			}
+		}
+
+		// both executions continue from the third iteration
+		maxSum.setIterationsNumber(8);
+		Checkpoint.restore(maxSum, file);
+		maxSum.solveSynchronous();
+		resumed.solveSynchronous();
+		assertEquals(8, resumed.getSolution().getIterations());
+		assertArrayEquals(maxSum.getSolution().getAssignment(), resumed.getSolution().getAssignment());
+
+		// a truncated or inconsistent checkpoint is rejected before any node is changed
+		byte[] bytes = Files.readAllBytes(file);
+		byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1), badValue = bytes.clone();
+		VariableNode first = graph.getVariableNodes()[0];
+		int offset = 24 + 4 + (first.toString().length() + 3 & ~3) + 4 // x of the first variable
+				+ 4 * first.getDecisionVariable().getDomain().length;
+		ByteBuffer.wrap(badValue).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, 1000);
+		offset = 24; // header and number of variables
+		for (VariableNode vn : graph.getVariableNodes())
+			offset += 4 + (vn.toString().length() + 3 & ~3) + 4 + 4 * vn.getDecisionVariable().getDomain().length + 12;
+		offset += 4 + 4 + (graph.getFunctionNodes()[0].toString().length() + 3 & ~3) + 4; // first scope index
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, 1000);
+		for (byte[] corrupt : new byte[][] { truncated, badValue, bytes }) {
+			Files.write(file, corrupt);
+			FactorGraph fresh = GraphColouring.getExample();
+			Integer[] x = new Integer[fresh.getVariableNodes().length];
+			for (int i = 0; i < x.length; i++)
+				x[i] = fresh.getVariableNodes()[i].getX();
+			assertThrows(IOException.class, () -> Checkpoint.restore(new MaxSum(fresh), file));
+			for (int i = 0; i < x.length; i++)
+				assertEquals(x[i], fresh.getVariableNodes()[i].getX());
+			for (FunctionNode fn : fresh.getFunctionNodes())
+				for (VariableNode vn : fn.getNeighbours())
+					for (float r : fn.getR(vn).values())
+						assertEquals(0f, r);
+		}
+	}
+
+	@Test
+	@DisplayName("reproducing Synchronous MaxSum with fixed-point messages")
+	void test11() {
+		int[][] solutions = new int[2][];
+		List<List<String>> orders = new ArrayList<List<String>>();
+		List<Map<String, Map<Integer, Float>>> messages = new ArrayList<Map<String, Map<Integer, Float>>>();
+		for (int run = 0; run < 2; run++) {
+			FactorGraph graph = new InstanceGenerator(11).getRandomBinaryDCOP(100, 250, 5, 100);
+
+			/*
+			 * In the second run, the functions are added again as new nodes, in reverse
+			 * order: the messages to and from each variable are then summed in another
+			 * order, which follows the hash codes of its neighbours.
+			 */
+			if (run == 1) {
+				Function[] functions = graph.getFunctions();
+				graph.update(() -> {
+					for (int i = functions.length - 1; i >= 0; i--) {
+						graph.removeFunction(functions[i]);
+						graph.addFunction(functions[i]);
+					}
+				});
+			}
+			List<String> order = new ArrayList<String>();
+			for (VariableNode vn : graph.getVariableNodes()) {
+				order.add(vn.getNeighbours().toString());
+				vn.setX(vn.getDecisionVariable().getDomain()[0]);
+			}
+			orders.add(order);
+
+			graph.setFixedPoint(8);
+			MaxSum maxSum = new MaxSum(graph);
+			maxSum.setTracing(false);
+			maxSum.setConvergenceNumber(1000);
+			maxSum.setIterationsNumber(20);
+			maxSum.solveSynchronous();
+
+			solutions[run] = maxSum.getSolution().getAssignment();
+			Map<String, Map<Integer, Float>> R = new HashMap<String, Map<Integer, Float>>();
+			for (FunctionNode fn : graph.getFunctionNodes())
+				for (VariableNode vn : fn.getNeighbours()) {
+					R.put(fn + " to " + vn, new HashMap<Integer, Float>(fn.getR(vn)));
+					for (float r : fn.getR(vn).values())
+						assertEquals(r, Math.scalb(Math.round(Math.scalb(r, 8)), -8));
+				}
+			messages.add(R);
+
+			// messages are kept when switching back to float
+			FunctionNode fn = graph.getFunctionNodes()[0];
+			VariableNode vn = fn.getNeighbours()[0];
+			Map<Integer, Float> r = new HashMap<Integer, Float>(fn.getR(vn));
+			Map<Integer, Float> q = new HashMap<Integer, Float>(vn.getQ(fn));
+			graph.setFixedPoint(-1);
+			assertEquals(r, fn.getR(vn));
+			assertEquals(q, vn.getQ(fn));
+			assertThrows(IllegalArgumentException.class, () -> graph.setFixedPoint(FixedPoint.MAX_FRACTION_BITS + 1));
+		}
+		assertNotEquals(orders.get(0), orders.get(1));
+		assertEquals(messages.get(0), messages.get(1));
+		assertArrayEquals(solutions[0], solutions[1]);
+	}
+
+	@Test
+	@DisplayName("delivering snapshots to slow and failing subscribers")
+	void test12() {
+		List<Runnable> deliveries = new ArrayList<Runnable>();
+		SolutionPublisher publisher = new SolutionPublisher(deliveries::add);
+		List<SolutionSnapshot> received = new ArrayList<SolutionSnapshot>();
+		List<Throwable> errors = new ArrayList<Throwable>();
+
+		publisher.subscribe(new Flow.Subscriber<SolutionSnapshot>() {
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(SolutionSnapshot item) {
+				received.add(item);
+				if (received.size() == 3)
+					throw new IllegalStateException("failing subscriber");
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				errors.add(throwable);
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		});
+
+		// two executions, submitted before any delivery
+		publisher.submit(new SolutionSnapshot(1, new int[] { 0 }, new int[] { 1 }, 1, false));
+		publisher.submit(new SolutionSnapshot(2, new int[] { 1 }, new int[] { 2 }, 2, false));
+		publisher.submit(new SolutionSnapshot(2, new int[0], new int[0], 2, true));
+		publisher.submit(new SolutionSnapshot(1, new int[] { 0 }, new int[] { 3 }, 3, false));
+		while (!deliveries.isEmpty())
+			deliveries.remove(0).run();
+
+		// the end of the first execution is not merged into the second one
+		assertEquals(2, received.size());
+		assertTrue(received.get(0).isLast());
+		assertArrayEquals(new int[] { 0, 1 }, received.get(0).getVariables());
+		assertFalse(received.get(1).isLast());
+
+		// a subscriber that throws is cancelled and signalled
+		publisher.submit(new SolutionSnapshot(2, new int[0], new int[0], 3, true));
+		while (!deliveries.isEmpty())
+			deliveries.remove(0).run();
+		assertEquals(3, received.size());
+		assertEquals(1, errors.size());
+		assertFalse(publisher.hasSubscribers());
+	}
+}
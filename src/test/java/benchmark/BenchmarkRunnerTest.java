@@ -0,0 +1,62 @@
+package benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("testing BenchmarkRunner")
+public class BenchmarkRunnerTest {
+
+	private static BenchmarkRunner.Record getRecord(String instance, float utility) {
+		BenchmarkRunner.Record r = new BenchmarkRunner.Record();
+		r.instance = instance;
+		r.engine = "sync";
+		r.threads = 1;
+		r.solveMs = 1.5;
+		r.iterations = 10;
+		r.messages = 100;
+		r.utility = utility;
+		return r;
+	}
+
+	@Test
+	@DisplayName("reading back reports with infinite utilities and unusual paths")
+	void testReports() throws IOException {
+		List<BenchmarkRunner.Record> records = Arrays.asList(getRecord("xcsp/MS_15_08_3_01.xml", -12),
+				getRecord("runs, \"old\"\\\n/MS.xml", Float.NEGATIVE_INFINITY));
+
+		for (String suffix : new String[] { ".json", ".csv" }) {
+			File f = File.createTempFile("report", suffix);
+			f.deleteOnExit();
+			BenchmarkRunner.write(records, f);
+
+			String text = new String(Files.readAllBytes(f.toPath()));
+			if (suffix.equals(".json")) {
+				assertTrue(text.contains("\"utility\": \"-Infinity\""));
+				assertTrue(text.contains("\"instance\": \"runs, \\\"old\\\"\\\\\\u000a/MS.xml\""));
+			}
+
+			List<BenchmarkRunner.Record> read = BenchmarkRunner.read(f);
+			assertEquals(records.size(), read.size());
+			for (int i = 0; i < records.size(); i++)
+				assertArrayEquals(records.get(i).getValues(), read.get(i).getValues());
+		}
+	}
+
+	@Test
+	@DisplayName("comparing with a baseline of zero")
+	void testChange() {
+		assertEquals("  +50.0%", BenchmarkRunner.getChange(2, 3));
+		assertEquals("n/a", BenchmarkRunner.getChange(0, 3));
+	}
+
+}
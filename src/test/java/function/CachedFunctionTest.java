@@ -0,0 +1,113 @@
+package function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dcop.DecisionVariable;
+import dcop.Function;
+
+@DisplayName("testing CachedFunction")
+public class CachedFunctionTest {
+
+	// a function of 4 variables of domain {0, ..., 9}, counting its evaluations
+	private static class CountingFunction extends Function {
+
+		final AtomicLong evaluations = new AtomicLong();
+
+		CountingFunction() {
+			super(getVariables(), "F");
+		}
+
+		private static DecisionVariable[] getVariables() {
+			int[] domain = new int[10];
+			for (int d = 0; d < domain.length; d++)
+				domain[d] = d;
+			DecisionVariable[] variables = new DecisionVariable[4];
+			for (int i = 0; i < variables.length; i++)
+				variables[i] = new DecisionVariable(domain, "x" + i);
+			return variables;
+		}
+
+		@Override
+		public float evaluate(Number[] d) {
+			evaluations.incrementAndGet();
+			return d[0].intValue() * 1000 + d[1].intValue() * 100 + d[2].intValue() * 10 + d[3].intValue();
+		}
+	}
+
+	@Test
+	@DisplayName("testing hits, misses and the bound on the number of entries")
+	void testEviction() {
+		CountingFunction f = new CountingFunction();
+		CachedFunction cache = new CachedFunction(f, 100);
+		assertEquals(128, cache.getCapacity());
+
+		int[] values = new int[] { 1, 2, 3, 4 };
+		assertEquals(1234f, cache.evaluate(values));
+		assertEquals(1234f, cache.evaluate(values));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, f.evaluations.get());
+
+		// values outside the domains bypass the cache
+		assertEquals(1235f, cache.evaluate(new int[] { 1, 2, 3, 5 }));
+		assertEquals(-1f, cache.evaluate(new int[] { 0, 0, 0, -1 }));
+
+		for (int row = 0; row < 10000; row++)
+			assertEquals((float) row, cache.evaluate(new int[] { row / 1000, row / 100 % 10, row / 10 % 10, row % 10 }));
+		assertTrue(cache.getEvictions() >= 10000 - cache.getCapacity());
+
+		// a hot assignment stays cached while others are evicted
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			cache.evaluate(values);
+			int row = random.nextInt(10000);
+			cache.evaluate(new int[] { row / 1000, row / 100 % 10, row / 10 % 10, row % 10 });
+		}
+		long evaluations = f.evaluations.get();
+		cache.evaluate(values);
+		assertEquals(evaluations, f.evaluations.get());
+	}
+
+	@Test
+	@DisplayName("testing concurrent evaluations")
+	void testConcurrency() throws InterruptedException {
+		CachedFunction cache = new CachedFunction(new CountingFunction(), 1 << 10);
+		List<Thread> threads = new ArrayList<Thread>();
+		List<AssertionError> errors = new ArrayList<AssertionError>();
+		for (int t = 0; t < 4; t++) {
+			Random random = new Random(t);
+			threads.add(new Thread(() -> {
+				int[] values = new int[4];
+				for (int i = 0; i < 100000; i++) {
+					int row = random.nextInt(2000);
+					values[0] = row / 1000;
+					values[1] = row / 100 % 10;
+					values[2] = row / 10 % 10;
+					values[3] = row % 10;
+					if (cache.evaluate(values) != row)
+						synchronized (errors) {
+							errors.add(new AssertionError("wrong utility for " + row));
+						}
+				}
+			}));
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+
+		assertTrue(errors.isEmpty());
+		assertEquals(400000, cache.getHits() + cache.getMisses());
+		assertTrue(cache.getHitRate() > 0.3);
+	}
+
+}
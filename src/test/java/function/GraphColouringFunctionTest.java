@@ -0,0 +1,69 @@
+package function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dcop.DecisionVariable;
+import dcop.Function;
+
+@DisplayName("testing the graph colouring functions")
+public class GraphColouringFunctionTest {
+
+	private static DecisionVariable[] getVariables(int[] domain, int n) {
+		DecisionVariable[] variables = new DecisionVariable[n];
+		for (int i = 0; i < n; i++)
+			variables[i] = new DecisionVariable(domain, "x" + i);
+		return variables;
+	}
+
+	@Test
+	@DisplayName("testing the primitive evaluation of SimpleGraphColouringFunction")
+	void testSimple() {
+		// small domains use a bit mask, large ones pairwise comparisons
+		for (int[] domain : new int[][] { { 1, 2, 3 }, { -5, 0, 1000 } }) {
+			Function f = new SimpleGraphColouringFunction(getVariables(domain, 3), "F");
+			int a = domain[0], b = domain[1], c = domain[2];
+
+			assertEquals(Float.NEGATIVE_INFINITY, f.evaluate(new int[] { a, b, a }));
+			assertEquals(Float.NEGATIVE_INFINITY, f.evaluate(new Integer[] { b, b, a }));
+			assertEquals(1f, f.evaluate(new int[] { c, a, b }));
+			assertEquals(f.evaluate(new Integer[] { a, b }), f.evaluate(new int[] { a, b }));
+		}
+	}
+
+	@Test
+	@DisplayName("testing that WeightedGraphColouringFunction only depends on its arguments")
+	void testWeighted() {
+		DecisionVariable[] variables = getVariables(new int[] { 1, 2, 3 }, 3);
+		float[] preferences = new float[] { 0.1f, 0.2f, 0.3f };
+		Function f = new WeightedGraphColouringFunction(variables, "F", 1, preferences);
+
+		assertEquals(0.2f, f.evaluate(new int[] { 1, 2, 3 }));
+		assertEquals(0.2f - 2 - 2, f.evaluate(new int[] { 2, 2, 2 }));
+		assertEquals(0.3f - 3, f.evaluate(new Integer[] { 1, 3, 3 }));
+
+		// same preferences, same table
+		Function g = new WeightedGraphColouringFunction(getVariables(new int[] { 1, 2, 3 }, 3), "G", 1,
+				new float[] { 0.1f, 0.2f, 0.3f });
+		assertEquals(f.getTableKey(), g.getTableKey());
+		Function h = new WeightedGraphColouringFunction(variables, "H", 0, preferences);
+		assertNotEquals(f.getTableKey(), h.getTableKey());
+	}
+
+	@Test
+	@DisplayName("testing that both evaluations of a Function agree")
+	void testAdapter() {
+		DecisionVariable[] variables = getVariables(new int[] { 1, 2 }, 2);
+		Function f = new Function(variables, "F") {
+			@Override
+			public float evaluate(Number[] d) {
+				return d[0].intValue() - d[1].intValue();
+			}
+		};
+		assertEquals(-1f, f.evaluate(new int[] { 1, 2 }));
+	}
+
+}
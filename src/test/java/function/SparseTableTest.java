@@ -0,0 +1,115 @@
+package function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dcop.DecisionVariable;
+import factorgraph.FunctionNode;
+import factorgraph.VariableNode;
+import toolkit.Utils;
+
+@DisplayName("testing SparseTable")
+public class SparseTableTest {
+
+	@Test
+	@DisplayName("testing the lookup of listed and default assignments")
+	void testGet() {
+		SparseTable table = new SparseTable(new int[] { 2, 3 }, new int[] { 1, 2, 0, 1, 1, 2 },
+				new float[] { 5, 7, -1 }, Float.NEGATIVE_INFINITY);
+		assertEquals(2, table.getNbrTuples()); // the last duplicate wins
+		assertEquals(-1f, table.get(new int[] { 1, 2 }));
+		assertEquals(7f, table.get(new int[] { 0, 1 }));
+		assertEquals(Float.NEGATIVE_INFINITY, table.get(new int[] { 0, 0 }));
+	}
+
+	@Test
+	@DisplayName("comparing the sparse kernel with the enumeration of the joint space")
+	void testMaximise() {
+		Random random = new Random(42);
+
+		for (int test = 0; test < 200; test++) {
+			int[] sizes = new int[1 + random.nextInt(4)];
+			int size = 1;
+			for (int i = 0; i < sizes.length; i++)
+				size *= sizes[i] = 1 + random.nextInt(4);
+
+			// list about half of the joint space, sometimes all of it
+			int n = test % 10 == 0 ? size : random.nextInt(size);
+			int[] indices = new int[n * sizes.length];
+			float[] utilities = new float[n];
+			for (int t = 0; t < n; t++) {
+				int row = test % 10 == 0 ? t : random.nextInt(size);
+				for (int i = sizes.length - 1; i >= 0; i--) {
+					indices[t * sizes.length + i] = row % sizes[i];
+					row /= sizes[i];
+				}
+				utilities[t] = random.nextInt(20) - 10;
+			}
+			float defaultUtility = random.nextBoolean() ? Float.NEGATIVE_INFINITY : random.nextInt(20) - 10;
+			SparseTable table = new SparseTable(sizes, indices, utilities, defaultUtility);
+			SparseTable.Workspace workspace = table.newWorkspace();
+
+			float[][] q = new float[sizes.length][];
+			for (int k = 0; k < q.length; k++) {
+				q[k] = new float[sizes[k]];
+				for (int j = 0; j < sizes[k]; j++)
+					q[k][j] = random.nextInt(10);
+			}
+
+			for (int target = 0; target < sizes.length; target++) {
+				float[] expected = new float[sizes[target]];
+				Arrays.fill(expected, Float.NEGATIVE_INFINITY);
+				int[] x = new int[sizes.length];
+				for (int row = 0; row < size; row++) {
+					for (int i = sizes.length - 1, r = row; i >= 0; i--) {
+						x[i] = r % sizes[i];
+						r /= sizes[i];
+					}
+					float sigma = table.get(x);
+					for (int k = 0; k < sizes.length; k++)
+						if (k != target)
+							sigma = Utils.checkedSum(sigma, q[k][x[k]]);
+					expected[x[target]] = Math.max(sigma, expected[x[target]]);
+				}
+
+				float[] out = new float[sizes[target]];
+				table.maximise(target, q, out, workspace);
+				assertArrayEquals(expected, out);
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("testing a sparse function whose joint space is larger than an array")
+	void testLargeJointSpace() {
+		int[] domain = new int[100];
+		for (int j = 0; j < domain.length; j++)
+			domain[j] = j;
+
+		// 10^12 joint assignments, of which only one is listed
+		DecisionVariable[] variables = new DecisionVariable[6];
+		int[] sizes = new int[variables.length], indices = new int[variables.length];
+		for (int i = 0; i < variables.length; i++) {
+			variables[i] = new DecisionVariable(domain, "x" + i);
+			sizes[i] = domain.length;
+			indices[i] = 7;
+		}
+		SparseTable table = new SparseTable(sizes, indices, new float[] { 10 }, 2);
+		assertEquals(2f, table.get(new int[] { 7, 7, 7, 7, 7, 8 }));
+		assertEquals(10f, table.get(indices));
+
+		FunctionNode node = new FunctionNode(new SparseTableFunction(variables, "f", table));
+		VariableNode target = variables[0].getVariableNode();
+		target.setX(0);
+		node.sendRMessageTo(target);
+		for (int d : domain)
+			assertEquals(d == 7 ? 10f : 2f, (float) node.getR(target).get(d));
+	}
+
+}
@@ -1,9 +1,43 @@
 package parser;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import algorithm.MaxSum;
+import dcop.DecisionVariable;
+import dcop.Function;
+import factorgraph.FactorGraph;
+import factorgraph.FunctionNode;
+import factorgraph.VariableNode;
+import function.Expression;
+import function.TableFunction;
+import function.UtilityTable;
+import toolkit.Utils;
 
 @DisplayName("testing XCSPparser")
 public class XCSPparserTest {
@@ -15,6 +49,371 @@ public class XCSPparserTest {
 		assertTrue(parser.getAgents().size() == 10);
 	}
 
-	// TODO add remaining tests
+	@Test
+	@DisplayName("testing missing and malformed files")
+	void testMalformed() throws IOException {
+		assertThrows(UncheckedIOException.class, () -> new XCSPparser("xcsp/missing.xml"));
+
+		// a truncated file
+		String xml = new String(Files.readAllBytes(Path.of("xcsp/RandomDCOP10.xml")));
+		Path file = Files.createTempFile("truncated", ".xml");
+		file.toFile().deleteOnExit();
+		Files.write(file, xml.substring(0, xml.length() / 2).getBytes());
+		assertThrows(IllegalArgumentException.class, () -> new XCSPparser(file.toString()));
+		assertThrows(IllegalArgumentException.class, () -> FactorGraphBuilder.build(file.toString()));
+	}
+
+	@Test
+	@DisplayName("testing variables, domains and neighbourhoods")
+	void testGetVariables() {
+		XCSPparser parser = new XCSPparser("xcsp/SimpleGraphColouring.xml");
+		assertEquals(3, parser.getNbrVars());
+		assertEquals("A2", parser.getOwner("X2.1"));
+		assertEquals(2, parser.getDomainSize("X2.1"));
+		assertEquals(2, parser.getNeighbourVars("X1.1").size());
+	}
+
+	@Test
+	@DisplayName("comparing the indexed queries with scans of the document")
+	void testIndexedQueries() throws Exception {
+		// a problem with a random variable and a variable without owner
+		String xml = new String(Files.readAllBytes(Path.of("xcsp/SimpleGraphColouring.xml")))
+				.replace("<variable agent=\"A3\" name=\"X3.1\"", "<variable type=\"random\" name=\"X3.1\"")
+				.replace("</variables>", "<variable name=\"X4.1\" domain=\"D1\" /></variables>")
+				.replace("</constraints>",
+						"<constraint name=\"C3\" arity=\"2\" scope=\"X4.1 X1.1\" reference=\"R0\" /></constraints>");
+		Path file = Files.createTempFile("SimpleGraphColouring", ".xml");
+		file.toFile().deleteOnExit();
+		Files.write(file, xml.getBytes());
+
+		for (String path : new String[] { file.toString(), "xcsp/MS_15_08_3_01.xml", "xcsp/RandomDCOP_12_4_1.xml" }) {
+			XCSPparser parser = new XCSPparser(path);
+			Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(path));
+
+			Set<String> agents = new HashSet<String>();
+			NodeList nodes = doc.getElementsByTagName("agent");
+			for (int i = 0; i < nodes.getLength(); i++)
+				agents.add(((Element) nodes.item(i)).getAttribute("name"));
+			assertEquals(agents, parser.getAgents());
+
+			Set<String> variables = new HashSet<String>(), random = new HashSet<String>();
+			Map<String, String> owners = new HashMap<String, String>();
+			Map<String, Set<String>> owned = new HashMap<String, Set<String>>();
+			nodes = doc.getElementsByTagName("variable");
+			for (int i = 0; i < nodes.getLength(); i++) {
+				Element v = (Element) nodes.item(i);
+				String name = v.getAttribute("name"), agent = v.hasAttribute("agent") ? v.getAttribute("agent") : null;
+				if ("random".equals(v.getAttribute("type")))
+					random.add(name);
+				else
+					variables.add(name);
+				if (agent != null)
+					owners.put(name, agent);
+				owned.computeIfAbsent(agent, a -> new HashSet<String>()).add(name);
+			}
+			assertEquals(variables, parser.getVariables());
+			assertEquals(variables.size(), parser.getNbrVars());
+			assertEquals(owners, parser.getOwners());
+			for (String agent : owned.keySet()) {
+				assertEquals(owned.get(agent), parser.getVariables(agent));
+				assertEquals(owned.get(agent).size(), parser.getNbrVars(agent));
+			}
+			assertTrue(parser.getVariables("unknown").isEmpty());
+			assertThrows(UnsupportedOperationException.class, () -> parser.getVariables().clear());
+
+			Map<String, Set<String>> neighbours = new HashMap<String, Set<String>>();
+			nodes = doc.getElementsByTagName("constraint");
+			for (int i = 0; i < nodes.getLength(); i++) {
+				String[] scope = ((Element) nodes.item(i)).getAttribute("scope").trim().split("\\s+");
+				for (String x : scope)
+					for (String y : scope)
+						if (!x.equals(y) && !random.contains(y))
+							neighbours.computeIfAbsent(x, k -> new HashSet<String>()).add(y);
+			}
+			for (String x : variables) {
+				Set<String> expected = neighbours.getOrDefault(x, new HashSet<String>());
+				assertEquals(expected, parser.getNeighbourVars(x));
+				assertEquals(expected.size(), parser.getNbrneighbours(x));
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("testing the decoding of relations")
+	void testGetRelations() {
+		XCSPparser parser = new XCSPparser("xcsp/MS_15_08_3_01.xml");
+		assertEquals(2, parser.getRelations().size());
+		assertEquals(41, parser.getConstraints().size());
+
+		// "infinity: 1 1|2 2|3 3", the cost applies to all the following tuples
+		XCSPparser.Relation neq = parser.getRelations().get(0);
+		assertEquals("NEQ", neq.name);
+		assertArrayEquals(new int[] { 1, 1, 2, 2, 3, 3 }, neq.tuples);
+		assertArrayEquals(new float[] { Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY },
+				neq.costs);
+		assertEquals(0f, neq.defaultCost);
+	}
+
+	@Test
+	@DisplayName("testing the construction of factor graphs")
+	void testBuildFactorGraph() {
+		FactorGraph graph = FactorGraphBuilder.build("xcsp/RandomDCOP10.xml");
+		assertEquals(10, graph.getAgents().length);
+		assertEquals(18, graph.getFunctionNodes().length);
+
+		// C0 has scope "X1.1 X2.1" and relation R0 = "40:1 3|73:2 1|..."
+		for (FunctionNode fn : graph.getFunctionNodes())
+			if (fn.toString().equals("C0")) {
+				assertEquals(-40f, fn.evaluate(new Integer[] { 1, 3 }));
+				assertEquals(-73f, fn.evaluate(new Integer[] { 2, 1 }));
+			}
+
+		// constraints referencing the same relation share its table
+		graph = FactorGraphBuilder.build("xcsp/MS_15_08_3_01.xml");
+		TableFunction eq1 = null;
+		for (FunctionNode fn : graph.getFunctionNodes())
+			if (fn.toString().contains("_equals_")) {
+				TableFunction eq2 = (TableFunction) fn.getFunction();
+				if (eq1 != null)
+					assertSame(eq1.getTable(), eq2.getTable());
+				eq1 = eq2;
+				assertEquals(0f, eq2.evaluate(new Integer[] { 2, 2 }));
+				assertEquals(Float.NEGATIVE_INFINITY, eq2.evaluate(new Integer[] { 1, 2 }));
+			}
+
+		new MaxSum(graph).solveSynchronous();
+	}
+
+
+	@Test
+	@DisplayName("testing the compiled instance cache")
+	void testCompiledInstance() throws IOException {
+		String xml = "xcsp/RandomDCOP10.xml";
+		Path dir = Files.createTempDirectory("cache");
+		Path cache = dir.resolve("RandomDCOP10.bin");
+		try {
+			FactorGraph built = CompiledInstance.load(xml, cache);
+			assertTrue(Files.exists(cache));
+			assertArrayEquals(CompiledInstance.hash(Path.of(xml)), CompiledInstance.readHash(cache));
+			assertEquivalent(built, CompiledInstance.load(xml, cache));
+
+			// a different source invalidates the cache, which is rebuilt
+			CompiledInstance.write(built, new byte[32], cache);
+			assertEquivalent(built, CompiledInstance.load(xml, cache));
+			assertArrayEquals(CompiledInstance.hash(Path.of(xml)), CompiledInstance.readHash(cache));
+
+			// a corrupt cache is a miss
+			byte[] bytes = Files.readAllBytes(cache);
+			Files.write(cache, Arrays.copyOf(bytes, bytes.length / 2));
+			assertThrows(IOException.class, () -> CompiledInstance.read(cache));
+			assertEquivalent(built, CompiledInstance.load(xml, cache));
+
+			byte[] corrupt = bytes.clone();
+			corrupt[8 + 32 + 3] = 0x7f; // number of agents, larger than the file
+			Files.write(cache, corrupt);
+			assertThrows(IOException.class, () -> CompiledInstance.read(cache));
+			assertEquivalent(built, CompiledInstance.load(xml, cache));
+			assertArrayEquals(bytes, Files.readAllBytes(cache));
+
+			// the cache is replaced without leaving temporary files
+			try (Stream<Path> files = Files.list(dir)) {
+				assertEquals(1, files.count());
+			}
+		} finally {
+			Files.deleteIfExists(cache);
+			Files.delete(dir);
+		}
+	}
+
+	private static void assertEquivalent(FactorGraph expected, FactorGraph actual) {
+		assertEquals(expected.getAgents().length, actual.getAgents().length);
+		for (int i = 0; i < expected.getAgents().length; i++) {
+			assertEquals(expected.getAgents()[i].getId(), actual.getAgents()[i].getId());
+			assertEquals(Arrays.toString(expected.getAgents()[i].getDecisionVariables()),
+					Arrays.toString(actual.getAgents()[i].getDecisionVariables()));
+		}
+
+		assertEquals(expected.getVariableNodes().length, actual.getVariableNodes().length);
+		for (int i = 0; i < expected.getVariableNodes().length; i++) {
+			DecisionVariable x = expected.getVariableNodes()[i].getDecisionVariable();
+			DecisionVariable y = actual.getVariableNodes()[i].getDecisionVariable();
+			assertEquals(x.toString(), y.toString());
+			assertArrayEquals(x.getDomain(), y.getDomain());
+		}
+
+		assertEquals(expected.getFunctions().length, actual.getFunctions().length);
+		for (int i = 0; i < expected.getFunctions().length; i++) {
+			Function f = expected.getFunctions()[i];
+			Function g = actual.getFunctions()[i];
+			assertEquals(f.toString(), g.toString());
+			assertEquals(Arrays.toString(f.getDecisionVariables()), Arrays.toString(g.getDecisionVariables()));
+			UtilityTable t = ((TableFunction) f).getTable();
+			UtilityTable u = ((TableFunction) g).getTable();
+			assertArrayEquals(t.getSizes(), u.getSizes());
+			for (int row = 0; row < UtilityTable.getSize(t.getSizes()); row++)
+				assertEquals(t.get(row), u.get(row));
+		}
+	}
+
+	@Test
+	@DisplayName("testing intensional constraints")
+	void testIntensional() {
+		ExpressionCompiler compiler = new ExpressionCompiler("if(eq(X,Y),W,abs(sub(X,Y)))",
+				new String[] { "X", "Y", "W" });
+		Expression e = compiler.compile(new String[] { "B", "A", "10" }, new String[] { "A", "B" });
+		assertEquals(10, e.evaluate(new int[] { 2, 2 }));
+		assertEquals(3, e.evaluate(new int[] { 4, 1 }));
+		assertThrows(IllegalArgumentException.class, () -> new ExpressionCompiler("foo(X)", new String[] { "X" }));
+
+		FactorGraph graph = FactorGraphBuilder.build("xcsp/IntensionalGraphColouring.xml");
+		Map<String, Function> functions = new HashMap<String, Function>();
+		for (Function f : graph.getFunctions())
+			functions.put(f.toString(), f);
+
+		// small joint spaces are tabulated, and equal bindings share their table
+		assertTrue(functions.get("C0") instanceof TableFunction);
+		assertEquals(Float.NEGATIVE_INFINITY, functions.get("C0").evaluate(new Integer[] { 1, 1 }));
+		assertEquals(0f, functions.get("C0").evaluate(new Integer[] { 0, 1 }));
+		assertEquals(-10f, functions.get("C1").evaluate(new Integer[] { 2, 2 }));
+		assertEquals(-2f, functions.get("C2").evaluate(new Integer[] { 0, 2 }));
+
+		MaxSum ms = new MaxSum(graph);
+		ms.solveSynchronous();
+		assertEquals(graph.evaluate(ms.getSolution().getAssignment()), ms.getSolution().getUtility());
+	}
+
+	@Test
+	@DisplayName("testing divisions by zero in intensional constraints")
+	void testDivisionByZero() throws IOException {
+		// constants are not folded if they are undefined, which they only are when evaluated
+		ExpressionCompiler compiler = new ExpressionCompiler("if(eq(X,0),5,div(1,0))", new String[] { "X" });
+		Expression e = compiler.compile(new String[] { "A" }, new String[] { "A" });
+		assertEquals(5, e.evaluate(new int[] { 0 }));
+		assertThrows(ArithmeticException.class, () -> e.evaluate(new int[] { 1 }));
+
+		// the assignments where a predicate or a function is undefined are infeasible
+		String xml = new String(Files.readAllBytes(Path.of("xcsp/IntensionalGraphColouring.xml")))
+				.replace("ne(X,Y)", "eq(mod(X,Y),0)").replace("if(eq(X,Y),W,abs(sub(X,Y)))", "div(W,sub(X,Y))");
+		Path file = Files.createTempFile("IntensionalGraphColouring", ".xml");
+		file.toFile().deleteOnExit();
+		Files.write(file, xml.getBytes());
+
+		FactorGraph graph = FactorGraphBuilder.build(file.toString());
+		Map<String, Function> functions = new HashMap<String, Function>();
+		for (Function f : graph.getFunctions())
+			functions.put(f.toString(), f);
+		assertEquals(Float.NEGATIVE_INFINITY, functions.get("C0").evaluate(new Integer[] { 1, 0 }));
+		assertEquals(Float.NEGATIVE_INFINITY, functions.get("C0").evaluate(new Integer[] { 1, 2 }));
+		assertEquals(0f, functions.get("C0").evaluate(new Integer[] { 2, 1 }));
+		assertEquals(Float.NEGATIVE_INFINITY, functions.get("C1").evaluate(new Integer[] { 1, 1 }));
+		assertEquals(-5f, functions.get("C1").evaluate(new Integer[] { 2, 0 }));
+
+		MaxSum ms = new MaxSum(graph);
+		ms.solveSynchronous();
+		assertEquals(graph.evaluate(ms.getSolution().getAssignment()), ms.getSolution().getUtility());
+	}
+
+	@Test
+	@DisplayName("testing the application of a delta file to a factor graph")
+	void testApplyDelta() {
+		FactorGraph graph = FactorGraphBuilder.build("xcsp/SimpleGraphColouring.xml");
+		MaxSum ms = new MaxSum(graph);
+		ms.solveSynchronous();
+
+		Map<String, FunctionNode> before = new HashMap<String, FunctionNode>();
+		List<String> order = new ArrayList<String>();
+		for (FunctionNode fn : graph.getFunctionNodes()) {
+			before.put(fn.toString(), fn);
+			if (!fn.toString().equals("C1"))
+				order.add(fn.toString());
+		}
+		order.add("C3");
+
+		FactorGraphBuilder.applyDelta(graph, "xcsp/SimpleGraphColouring_delta.xml");
+		assertEquals(4, graph.getAgents().length);
+		assertEquals(4, graph.getVariableNodes().length);
+		assertEquals(3, graph.getFunctionNodes().length);
+
+		Map<String, FunctionNode> after = new HashMap<String, FunctionNode>();
+		for (FunctionNode fn : graph.getFunctionNodes()) {
+			after.put(fn.toString(), fn);
+			assertSame(fn, graph.getFunctionNodes()[fn.getIndex()]);
+		}
+		assertTrue(!after.containsKey("C1"));
+		assertSame(before.get("C2"), after.get("C2")); // kept with its messages
+		assertSame(before.get("C0"), after.get("C0")); // re-weighted in place
+		assertEquals(-5f, after.get("C0").evaluate(new Integer[] { 0, 1 }));
+		for (VariableNode vn : graph.getVariableNodes())
+			for (FunctionNode fn : vn.getNeighbours())
+				assertSame(fn, after.get(fn.toString()));
+
+		// the remaining nodes keep their order, and the added ones follow in delta order
+		for (int i = 0; i < order.size(); i++) {
+			assertEquals(order.get(i), graph.getFunctionNodes()[i].toString());
+			assertSame(graph.getFunctionNodes()[i], graph.getFunctionNode(graph.getFunctions()[i]));
+		}
+
+		// a batch of changes rebuilds the node arrays once, at its end
+		FunctionNode[] nodes = graph.getFunctionNodes();
+		DecisionVariable[] scope = after.get("C3").getFunction().getDecisionVariables();
+		int[] sizes = { scope[0].getDomain().length, scope[1].getDomain().length };
+		Function[] added = new Function[5];
+		graph.update(() -> {
+			for (int i = 0; i < added.length; i++) {
+				added[i] = new TableFunction(scope, "D" + i, new UtilityTable(sizes, new float[sizes[0] * sizes[1]]));
+				graph.addFunction(added[i]);
+			}
+			assertSame(nodes, graph.getFunctionNodes());
+		});
+		assertEquals(nodes.length + added.length, graph.getFunctionNodes().length);
+		for (int i = 0; i < added.length; i++) {
+			assertSame(added[i], graph.getFunctions()[nodes.length + i]);
+			assertEquals(nodes.length + i, graph.getFunctionNode(added[i]).getIndex());
+		}
+
+		ms = new MaxSum(graph);
+		ms.solveSynchronous();
+		assertEquals(graph.evaluate(ms.getSolution().getAssignment()), ms.getSolution().getUtility());
+	}
+
+	@Test
+	@DisplayName("testing the application of a delta file to a factor graph in fixed point")
+	void testApplyDeltaFixedPoint() throws IOException {
+		// C0 is re-weighted without infinite costs, which checkedSum would ignore
+		String xml = new String(Files.readAllBytes(Path.of("xcsp/SimpleGraphColouring_delta.xml"))).replace(
+				"nbTuples=\"2\" semantics=\"soft\" defaultCost=\"infinity\">2:1 0|5:0 1",
+				"nbTuples=\"4\" semantics=\"soft\" defaultCost=\"infinity\">2:0 0|3:0 1|5:1 0|7:1 1");
+		Path file = Files.createTempFile("SimpleGraphColouring_delta", ".xml");
+		file.toFile().deleteOnExit();
+		Files.write(file, xml.getBytes());
+
+		FactorGraph graph = FactorGraphBuilder.build("xcsp/SimpleGraphColouring.xml");
+		graph.setFixedPoint(8);
+		FactorGraphBuilder.applyDelta(graph, file.toString());
+		assertEquals(8, graph.getFixedPoint());
+		assertEquals(3, graph.getFunctionNodes().length);
+
+		// the R messages use the utilities of the current functions, and are exact as these are integers
+		for (FunctionNode fn : graph.getFunctionNodes())
+			for (VariableNode vn : fn.getNeighbours()) {
+				VariableNode[] neighbours = fn.getNeighbours();
+				assertEquals(2, neighbours.length);
+				int idx = fn.getVarIndex(vn);
+
+				// as in sendRMessageTo, only R(x) is reset, and the other values keep their maximum
+				Map<Integer, Float> expected = new HashMap<Integer, Float>(fn.getR(vn));
+				expected.put(vn.getX(), Float.NEGATIVE_INFINITY);
+				for (int a : neighbours[0].getDecisionVariable().getDomain())
+					for (int b : neighbours[1].getDecisionVariable().getDomain()) {
+						int[] values = { a, b };
+						float sigma = fn.evaluate(values);
+						sigma = Utils.checkedSum(sigma, neighbours[1 - idx].getQ(fn).get(values[1 - idx]));
+						expected.put(values[idx], Math.max(sigma, expected.get(values[idx])));
+					}
+
+				fn.sendRMessageTo(vn);
+				assertEquals(expected, fn.getR(vn), fn + " to " + vn);
+			}
+	}
 
 }
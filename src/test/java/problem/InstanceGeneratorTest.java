@@ -0,0 +1,93 @@
+package problem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dcop.Agent;
+import factorgraph.FactorGraph;
+import factorgraph.FunctionNode;
+import factorgraph.VariableNode;
+import toolkit.IntGraph;
+import toolkit.RandomGraphFactory;
+
+@DisplayName("testing InstanceGenerator")
+public class InstanceGeneratorTest {
+
+	private static int[] getX(FactorGraph graph) {
+		VariableNode[] vns = graph.getVariableNodes();
+		int[] x = new int[vns.length];
+		for (int i = 0; i < x.length; i++)
+			x[i] = vns[i].getX();
+		return x;
+	}
+
+	@Test
+	@DisplayName("testing that the same seed gives the same instance")
+	void testSeed() {
+		FactorGraph a = new InstanceGenerator(42).getRandomBinaryDCOP(100, 300, 3, 10);
+		FactorGraph b = new InstanceGenerator(42).getRandomBinaryDCOP(100, 300, 3, 10);
+		assertEquals(300, a.getFunctionNodes().length);
+		assertArrayEquals(getX(a), getX(b));
+
+		int[] assignment = getX(a);
+		assertEquals(a.evaluate(assignment), b.evaluate(assignment));
+
+		a = new InstanceGenerator(7).getWeightedGraphColouring(50, 100, 3);
+		b = new InstanceGenerator(7).getWeightedGraphColouring(50, 100, 3);
+		assertArrayEquals(getX(a), getX(b));
+		assertEquals(a.getFunctionNodes().length, b.getFunctionNodes().length);
+	}
+
+	// a star whose centre is node 0
+	private static IntGraph getStar(int nbrLeaves) {
+		int[] sources = new int[nbrLeaves], dests = new int[nbrLeaves];
+		for (int i = 0; i < nbrLeaves; i++)
+			dests[i] = i + 1;
+		return new IntGraph(nbrLeaves + 1, sources, dests);
+	}
+
+	@Test
+	@DisplayName("testing weighted graph colouring on agents with many neighbours")
+	void testWeightedGraphColouring() {
+		// the joint space of the centre, 3^13, is larger than the tabulation limit
+		FactorGraph graph = new InstanceGenerator(1).getWeightedGraphColouring(getStar(12), 3);
+		for (FunctionNode fn : graph.getFunctionNodes())
+			if (fn.getNeighbours().length == 13)
+				assertNull(fn.getTable());
+			else
+				assertEquals(9, fn.getTable().size());
+
+		// 3^21 joint assignments do not fit in an int
+		assertThrows(IllegalArgumentException.class,
+				() -> new InstanceGenerator(1).getWeightedGraphColouring(getStar(20), 3));
+		assertThrows(IllegalArgumentException.class, () -> new InstanceGenerator(1)
+				.getWeightedGraphColouring(RandomGraphFactory.getScaleFreeIntGraph(2000, 3, new Random(1)), 3));
+	}
+
+	@Test
+	@DisplayName("testing the structure of generated instances")
+	void testStructure() {
+		FactorGraph graph = new InstanceGenerator(1).getRandomDCOP(20, 30, 3, 2, 5);
+		assertEquals(20, graph.getVariableNodes().length);
+		assertEquals(30, graph.getFunctionNodes().length);
+		assertEquals(3, graph.getFunctionNodes()[0].getNeighbours().length);
+
+		// 8 meetings of 3 attendees: 24 variables and 24 equality constraints
+		graph = new InstanceGenerator(1).getMeetingScheduling(15, 8, 3, 3);
+		assertEquals(24, graph.getVariableNodes().length);
+		int nbrConstraints = 24;
+		for (Agent a : graph.getAgents()) {
+			int n = a.getDecisionVariables().length;
+			nbrConstraints += n * (n - 1) / 2;
+		}
+		assertEquals(nbrConstraints, graph.getFunctionNodes().length);
+	}
+
+}
@@ -0,0 +1,50 @@
+package toolkit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("testing fixed-point arithmetic")
+public class FixedPointTest {
+
+	@Test
+	@DisplayName("quantising utilities and the sentinel of -infinity")
+	void testQuantise() {
+		assertEquals(384, FixedPoint.quantise(1.5f, 8));
+		assertEquals(-3, FixedPoint.quantise(-0.01f, 8));
+		assertEquals(1.5f, FixedPoint.toFloat(384, 8));
+		assertEquals(FixedPoint.NEGATIVE_INFINITY, FixedPoint.quantise(Float.NEGATIVE_INFINITY, 8));
+		assertEquals(Float.NEGATIVE_INFINITY, FixedPoint.toFloat(FixedPoint.NEGATIVE_INFINITY, 8));
+
+		// finite utilities saturate, and never become the sentinel
+		assertEquals(FixedPoint.MAX_VALUE, FixedPoint.quantise(Float.POSITIVE_INFINITY, 8));
+		assertEquals(FixedPoint.MIN_VALUE, FixedPoint.quantise(-1e30f, 8));
+	}
+
+	@Test
+	@DisplayName("saturating sums, ignoring -infinity as Utils.checkedSum")
+	void testCheckedSum() {
+		assertEquals(5, FixedPoint.checkedSum(2, 3));
+		assertEquals(3, FixedPoint.checkedSum(FixedPoint.NEGATIVE_INFINITY, 3));
+		assertEquals(2, FixedPoint.checkedSum(2, FixedPoint.NEGATIVE_INFINITY));
+		assertEquals(FixedPoint.NEGATIVE_INFINITY,
+				FixedPoint.checkedSum(FixedPoint.NEGATIVE_INFINITY, FixedPoint.NEGATIVE_INFINITY));
+		assertEquals(FixedPoint.MAX_VALUE, FixedPoint.checkedSum(FixedPoint.MAX_VALUE, 1));
+		assertEquals(FixedPoint.MIN_VALUE, FixedPoint.checkedSum(FixedPoint.MIN_VALUE, -1));
+	}
+
+	@Test
+	@DisplayName("detecting -infinity without branching")
+	void testSelect() {
+		assertEquals(0, FixedPoint.finite(FixedPoint.NEGATIVE_INFINITY));
+		for (int q : new int[] { 0, 1, -1, FixedPoint.MIN_VALUE, FixedPoint.MAX_VALUE })
+			assertEquals(1, FixedPoint.finite(q));
+
+		assertEquals(7, FixedPoint.select(1, 7));
+		assertEquals(FixedPoint.MIN_VALUE, FixedPoint.select(1, Long.MIN_VALUE));
+		assertEquals(FixedPoint.MAX_VALUE, FixedPoint.select(1, Long.MAX_VALUE));
+		assertEquals(FixedPoint.NEGATIVE_INFINITY, FixedPoint.select(0, 7));
+	}
+
+}
@@ -0,0 +1,131 @@
+package toolkit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import toolkit.RandomGraphFactory.Graph;
+
+@DisplayName("testing IntGraph and its generators")
+public class IntGraphTest {
+
+	@Test
+	@DisplayName("testing adjacency arrays and components")
+	void testComponents() {
+		IntGraph graph = new IntGraph(5, new int[] { 3, 0 }, new int[] { 4, 2 });
+		assertEquals(3, graph.nbrComponents);
+		assertArrayEquals(new int[] { 0, 1, 0, 2, 2 }, graph.componentOf);
+		assertEquals(1, graph.getDegree(0));
+		assertEquals(0, graph.getDegree(1));
+		assertEquals(2, graph.adjacency[graph.offsets[0]]);
+
+		Graph g = graph.toGraph();
+		assertEquals(3, g.components.size());
+		assertEquals(g.componentOf.get("3"), g.componentOf.get("4"));
+		assertTrue(g.neighbourhoods.get("4").contains("3"));
+	}
+
+	@Test
+	@DisplayName("testing that random graphs have distinct edges")
+	void testSizedRandGraph() {
+		IntGraph graph = RandomGraphFactory.getSizedRandIntGraph(1000, 5000, new Random(42));
+		LongHashSet edges = new LongHashSet(graph.getNbrEdges());
+		for (int i = 0; i < graph.getNbrEdges(); i++) {
+			assertTrue(graph.sources[i] < graph.dests[i]);
+			assertTrue(edges.add((long) graph.sources[i] * graph.nbrNodes + graph.dests[i]));
+		}
+		assertEquals(10000, graph.adjacency.length);
+
+		// a complete graph
+		Graph g = RandomGraphFactory.getSizedRandGraph(10, 45, 3);
+		assertEquals(1, g.components.size());
+		assertEquals(1.0, g.computeDensity());
+		assertEquals(3, g.clusters.size());
+	}
+
+	@Test
+	@DisplayName("testing scale-free graphs")
+	void testScaleFreeGraph() {
+		int n = 1000, m = 3;
+		IntGraph graph = RandomGraphFactory.getScaleFreeIntGraph(n, m, new Random(42));
+		assertSimple(graph);
+		assertEquals(m * (m + 1) / 2 + (n - m - 1) * m, graph.getNbrEdges());
+		assertEquals(1, graph.nbrComponents);
+		for (int i = 0; i < n; i++)
+			assertTrue(graph.getDegree(i) >= m);
+		assertTrue(graph.computeMaxDeg() > 10 * m); // hubs
+
+		assertSameEdges(graph, RandomGraphFactory.getScaleFreeIntGraph(n, m, new Random(42)));
+		assertThrows(IllegalArgumentException.class, () -> RandomGraphFactory.getScaleFreeIntGraph(3, 3, new Random()));
+		assertThrows(IllegalArgumentException.class,
+				() -> RandomGraphFactory.getScaleFreeIntGraph(10, 0, new Random()));
+	}
+
+	@Test
+	@DisplayName("testing small-world graphs")
+	void testSmallWorldGraph() {
+		int n = 1000, k = 6;
+		IntGraph graph = RandomGraphFactory.getSmallWorldIntGraph(n, k, 0.1, new Random(42));
+		assertSimple(graph);
+		assertEquals(n * k / 2, graph.getNbrEdges());
+		assertSameEdges(graph, RandomGraphFactory.getSmallWorldIntGraph(n, k, 0.1, new Random(42)));
+
+		// without rewiring, the ring lattice
+		IntGraph ring = RandomGraphFactory.getSmallWorldIntGraph(n, k, 0, new Random(42));
+		for (int i = 0; i < n; i++)
+			assertEquals(k, ring.getDegree(i));
+		assertTrue(graph.computeMaxDeg() > k);
+
+		assertThrows(IllegalArgumentException.class,
+				() -> RandomGraphFactory.getSmallWorldIntGraph(10, 3, 0.1, new Random()));
+		assertThrows(IllegalArgumentException.class,
+				() -> RandomGraphFactory.getSmallWorldIntGraph(10, 10, 0.1, new Random()));
+		assertThrows(IllegalArgumentException.class,
+				() -> RandomGraphFactory.getSmallWorldIntGraph(10, 2, 1.5, new Random()));
+	}
+
+	@Test
+	@DisplayName("testing tori")
+	void testTorus() {
+		IntGraph graph = RandomGraphFactory.getTorusIntGraph(4, 5, 3);
+		assertSimple(graph);
+		assertEquals(60, graph.nbrNodes);
+		assertEquals(3 * 60, graph.getNbrEdges());
+		for (int i = 0; i < graph.nbrNodes; i++)
+			assertEquals(6, graph.getDegree(i));
+		assertEquals(1, graph.nbrComponents);
+
+		// sides of 2 and 1 add one and no edge per node
+		graph = RandomGraphFactory.getTorusIntGraph(2, 3, 1);
+		assertSimple(graph);
+		assertEquals(6 / 2 + 6, graph.getNbrEdges());
+		for (int i = 0; i < graph.nbrNodes; i++)
+			assertEquals(3, graph.getDegree(i));
+
+		assertThrows(IllegalArgumentException.class, () -> RandomGraphFactory.getTorusIntGraph());
+		assertThrows(IllegalArgumentException.class, () -> RandomGraphFactory.getTorusIntGraph(4, 0));
+		assertThrows(IllegalArgumentException.class, () -> RandomGraphFactory.getTorusIntGraph(1 << 16, 1 << 16));
+	}
+
+	// checks that graph has no loops and no duplicate edges
+	private static void assertSimple(IntGraph graph) {
+		LongHashSet edges = new LongHashSet(graph.getNbrEdges());
+		for (int i = 0; i < graph.getNbrEdges(); i++) {
+			int i1 = Math.min(graph.sources[i], graph.dests[i]), i2 = Math.max(graph.sources[i], graph.dests[i]);
+			assertTrue(i1 < i2);
+			assertTrue(edges.add((long) i1 * graph.nbrNodes + i2));
+		}
+	}
+
+	private static void assertSameEdges(IntGraph expected, IntGraph actual) {
+		assertArrayEquals(expected.sources, actual.sources);
+		assertArrayEquals(expected.dests, actual.dests);
+	}
+
+}